@@ -0,0 +1,149 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+package celestibytes.miscutils.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import celestibytes.miscutils.util.Bytes;
+import celestibytes.miscutils.util.ColumnReader;
+import celestibytes.miscutils.util.ColumnWriter;
+import celestibytes.miscutils.util.TypedReader;
+import celestibytes.miscutils.util.TypedWriter;
+
+/** Summing one column of a four column table stored as interleaved rows against a ColumnReader, in rows per second */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(ColumnBench.N)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColumnBench {
+	static final int N = 1 << 20;
+	
+	private byte[] rows;
+	private File file;
+	private ColumnReader columns;
+	private long[] chunk = new long[ColumnWriter.DEFAULT_CHUNK_ROWS];
+	
+	@Setup
+	public void setup() throws IOException {
+		long[] lv = Data.longs(N);
+		double[] dv = Data.doubles(N);
+		int[] iv = Data.ints(N);
+		
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		TypedWriter w = new TypedWriter(os);
+		for(int i = 0; i < N; i++) {
+			w.writeLong(i);
+			w.writeInt(iv[i]);
+			w.writeDouble(dv[i]);
+			w.writeLong(lv[i]);
+		}
+		w.close();
+		rows = os.toByteArray();
+		
+		file = File.createTempFile("columns", ".bin");
+		ColumnWriter cw = new ColumnWriter(file);
+		int id = cw.addColumn("id", Bytes.TAG_LONG);
+		cw.addColumn("i", Bytes.TAG_INT);
+		cw.addColumn("d", Bytes.TAG_DOUBLE);
+		cw.addColumn("l", Bytes.TAG_LONG);
+		for(int i = 0; i < N; i++) {
+			cw.putLong(id, i);
+		}
+		cw.putInts(1, iv, 0, N);
+		cw.putDoubles(2, dv, 0, N);
+		cw.putLongs(3, lv, 0, N);
+		cw.close();
+		columns = new ColumnReader(file);
+	}
+	
+	@TearDown
+	public void tearDown() throws IOException {
+		columns.close();
+		file.delete();
+	}
+	
+	@Benchmark
+	public long rowsSum() throws IOException {
+		TypedReader r = new TypedReader(ByteBuffer.wrap(rows));
+		long sum = 0;
+		for(int i = 0; i < N; i++) {
+			r.skip();
+			r.skip();
+			r.skip();
+			sum += r.readLong();
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	public long columnSum() throws IOException {
+		long sum = 0;
+		for(int c = 0; c < columns.chunks(3); c++) {
+			int n = columns.readLongs(3, c, chunk, 0);
+			for(int i = 0; i < n; i++) {
+				sum += chunk[i];
+			}
+		}
+		return sum;
+	}
+	
+	/** Sums the last tenth of the rows, found through the min/max of the id column */
+	@Benchmark
+	public long columnRangeSum() throws IOException {
+		long sum = 0;
+		long lo = N - N / 10;
+		for(int c = 0; c < columns.chunks(0); c++) {
+			if(columns.overlaps(0, c, lo, Long.MAX_VALUE)) {
+				int n = columns.readLongs(3, c, chunk, 0);
+				long first = columns.firstRow(3, c);
+				for(int i = 0; i < n; i++) {
+					if(first + i >= lo) {
+						sum += chunk[i];
+					}
+				}
+			}
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,109 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+package celestibytes.miscutils.bench;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import celestibytes.miscutils.util.Bytes;
+
+/** Little Endian payload conversion of element-wise shifts against the bulk Bytes methods, in values per second */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(ConvertBench.N)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConvertBench {
+	static final int N = 16384;
+	
+	private byte[] bytes = new byte[N * 8];
+	private ByteBuffer direct = ByteBuffer.allocateDirect(N * 8);
+	private int[] ints = new int[N];
+	private double[] doubles = new double[N];
+	
+	@Setup
+	public void setup() {
+		ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().put(Data.doubles(N));
+		direct.put(bytes).clear();
+	}
+	
+	@Benchmark
+	public int[] shiftInts() {
+		byte[] b = bytes;
+		for(int i = 0, j = 0; i < N; i++, j += 4) {
+			ints[i] = (b[j] & 0xFF) | (b[j + 1] & 0xFF) << 8 | (b[j + 2] & 0xFF) << 16 | (b[j + 3] & 0xFF) << 24;
+		}
+		return ints;
+	}
+	
+	@Benchmark
+	public int[] bulkInts() {
+		Bytes.ints(bytes, 0, ints, 0, N);
+		return ints;
+	}
+	
+	@Benchmark
+	public double[] shiftDoubles() {
+		byte[] b = bytes;
+		for(int i = 0, j = 0; i < N; i++, j += 8) {
+			long v = (b[j] & 0xFFL) | (b[j + 1] & 0xFFL) << 8 | (b[j + 2] & 0xFFL) << 16 | (b[j + 3] & 0xFFL) << 24
+					| (b[j + 4] & 0xFFL) << 32 | (b[j + 5] & 0xFFL) << 40 | (b[j + 6] & 0xFFL) << 48 | (b[j + 7] & 0xFFL) << 56;
+			doubles[i] = Double.longBitsToDouble(v);
+		}
+		return doubles;
+	}
+	
+	@Benchmark
+	public double[] bulkDoubles() {
+		Bytes.doubles(bytes, 0, doubles, 0, N);
+		return doubles;
+	}
+	
+	@Benchmark
+	public double[] bulkDirectDoubles() {
+		Bytes.doubles(direct, 0, doubles, 0, N);
+		return doubles;
+	}
+	
+	@Benchmark
+	public byte[] bulkEncodeDoubles() {
+		Bytes.bytes(doubles, 0, N, bytes, 0);
+		return bytes;
+	}
+}
@@ -0,0 +1,76 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.bench;
+
+import java.util.Random;
+
+/** Deterministic benchmark inputs, ints and longs are mostly small like typical payloads */
+final class Data {
+	
+	private Data() {
+	}
+	
+	static int[] ints(int n) {
+		Random rnd = new Random(1);
+		int[] ret = new int[n];
+		for(int i = 0; i < n; i++) {
+			ret[i] = rnd.nextInt(8) == 0 ? rnd.nextInt() : rnd.nextInt(2000) - 1000;
+		}
+		return ret;
+	}
+	
+	static long[] longs(int n) {
+		Random rnd = new Random(2);
+		long[] ret = new long[n];
+		for(int i = 0; i < n; i++) {
+			ret[i] = rnd.nextInt(8) == 0 ? rnd.nextLong() : rnd.nextInt(100000);
+		}
+		return ret;
+	}
+	
+	static double[] doubles(int n) {
+		Random rnd = new Random(3);
+		double[] ret = new double[n];
+		for(int i = 0; i < n; i++) {
+			ret[i] = rnd.nextGaussian() * 1000;
+		}
+		return ret;
+	}
+	
+	/** ASCII strings of the given length */
+	static String[] strings(int n, int length) {
+		Random rnd = new Random(4);
+		String[] ret = new String[n];
+		char[] c = new char[length];
+		for(int i = 0; i < n; i++) {
+			for(int j = 0; j < length; j++) {
+				c[j] = (char) ('a' + rnd.nextInt(26));
+			}
+			ret[i] = new String(c);
+		}
+		return ret;
+	}
+}
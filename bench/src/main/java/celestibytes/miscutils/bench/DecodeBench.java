@@ -0,0 +1,185 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import celestibytes.miscutils.util.Bytes;
+import celestibytes.miscutils.util.TypedReader;
+import celestibytes.miscutils.util.TypedWriter;
+
+/** Per-type decode throughput of Bytes.read against TypedReader, in values per second. Streams are long enough for the reader's setup to be amortized */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(DecodeBench.N)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBench {
+	static final int N = 16384;
+	
+	private byte[] ints;
+	private byte[] varints;
+	private byte[] longs;
+	private byte[] doubles;
+	private byte[] doubleArray;
+	
+	@Setup
+	public void setup() throws IOException {
+		int[] iv = Data.ints(N);
+		long[] lv = Data.longs(N);
+		double[] dv = Data.doubles(N);
+		
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		TypedWriter w = new TypedWriter(os);
+		for(int i = 0; i < N; i++) {
+			w.writeInt(iv[i]);
+		}
+		w.flush();
+		ints = os.toByteArray();
+		
+		os.reset();
+		for(int i = 0; i < N; i++) {
+			w.writeZigZagInt(iv[i]);
+		}
+		w.flush();
+		varints = os.toByteArray();
+		
+		os.reset();
+		for(int i = 0; i < N; i++) {
+			w.writeLong(lv[i]);
+		}
+		w.flush();
+		longs = os.toByteArray();
+		
+		os.reset();
+		for(int i = 0; i < N; i++) {
+			w.writeDouble(dv[i]);
+		}
+		w.flush();
+		doubles = os.toByteArray();
+		
+		os.reset();
+		w.writeDoubles(dv);
+		w.flush();
+		doubleArray = os.toByteArray();
+	}
+	
+	@Benchmark
+	public void staticInt(Blackhole bh) throws IOException {
+		ByteArrayInputStream is = new ByteArrayInputStream(ints);
+		for(int i = 0; i < N; i++) {
+			bh.consume(Bytes.i(Bytes.read(is)));
+		}
+	}
+	
+	@Benchmark
+	public void readerInt(Blackhole bh) throws IOException {
+		TypedReader r = new TypedReader(new ByteArrayInputStream(ints));
+		for(int i = 0; i < N; i++) {
+			bh.consume(r.readInt());
+		}
+	}
+	
+	@Benchmark
+	public void bufferInt(Blackhole bh) throws IOException {
+		TypedReader r = new TypedReader(ByteBuffer.wrap(ints));
+		for(int i = 0; i < N; i++) {
+			bh.consume(r.readInt());
+		}
+	}
+	
+	@Benchmark
+	public void staticVarInt(Blackhole bh) throws IOException {
+		ByteArrayInputStream is = new ByteArrayInputStream(varints);
+		for(int i = 0; i < N; i++) {
+			bh.consume(Bytes.i(Bytes.read(is)));
+		}
+	}
+	
+	@Benchmark
+	public void readerVarInt(Blackhole bh) throws IOException {
+		TypedReader r = new TypedReader(new ByteArrayInputStream(varints));
+		for(int i = 0; i < N; i++) {
+			bh.consume(r.readInt());
+		}
+	}
+	
+	@Benchmark
+	public void staticLong(Blackhole bh) throws IOException {
+		ByteArrayInputStream is = new ByteArrayInputStream(longs);
+		for(int i = 0; i < N; i++) {
+			bh.consume(Bytes.l(Bytes.read(is)));
+		}
+	}
+	
+	@Benchmark
+	public void readerLong(Blackhole bh) throws IOException {
+		TypedReader r = new TypedReader(new ByteArrayInputStream(longs));
+		for(int i = 0; i < N; i++) {
+			bh.consume(r.readLong());
+		}
+	}
+	
+	@Benchmark
+	public void staticDouble(Blackhole bh) throws IOException {
+		ByteArrayInputStream is = new ByteArrayInputStream(doubles);
+		for(int i = 0; i < N; i++) {
+			bh.consume(Bytes.d(Bytes.read(is)));
+		}
+	}
+	
+	@Benchmark
+	public void readerDouble(Blackhole bh) throws IOException {
+		TypedReader r = new TypedReader(new ByteArrayInputStream(doubles));
+		for(int i = 0; i < N; i++) {
+			bh.consume(r.readDouble());
+		}
+	}
+	
+	@Benchmark
+	public double[] readerDoubleArray() throws IOException {
+		return new TypedReader(new ByteArrayInputStream(doubleArray)).readDoubles();
+	}
+}
@@ -0,0 +1,166 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import celestibytes.miscutils.util.Bytes;
+import celestibytes.miscutils.util.TypedWriter;
+
+/** Per-type encode throughput of the static Bytes.wt* methods against TypedWriter, in values per second */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(EncodeBench.N)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodeBench {
+	static final int N = 1024;
+	
+	private ByteArrayOutputStream os;
+	private TypedWriter w;
+	private int[] ints;
+	private long[] longs;
+	private double[] doubles;
+	
+	@Setup
+	public void setup() {
+		os = new ByteArrayOutputStream(N * 16);
+		w = new TypedWriter(os);
+		ints = Data.ints(N);
+		longs = Data.longs(N);
+		doubles = Data.doubles(N);
+	}
+	
+	@Benchmark
+	public int staticByte() throws IOException {
+		os.reset();
+		for(int i = 0; i < N; i++) {
+			Bytes.wtby((byte) ints[i], os);
+		}
+		return os.size();
+	}
+	
+	@Benchmark
+	public int writerByte() throws IOException {
+		os.reset();
+		for(int i = 0; i < N; i++) {
+			w.writeByte((byte) ints[i]);
+		}
+		w.flush();
+		return os.size();
+	}
+	
+	@Benchmark
+	public int staticInt() throws IOException {
+		os.reset();
+		for(int i = 0; i < N; i++) {
+			Bytes.wti(ints[i], os);
+		}
+		return os.size();
+	}
+	
+	@Benchmark
+	public int writerInt() throws IOException {
+		os.reset();
+		for(int i = 0; i < N; i++) {
+			w.writeInt(ints[i]);
+		}
+		w.flush();
+		return os.size();
+	}
+	
+	@Benchmark
+	public int writerVarInt() throws IOException {
+		os.reset();
+		for(int i = 0; i < N; i++) {
+			w.writeZigZagInt(ints[i]);
+		}
+		w.flush();
+		return os.size();
+	}
+	
+	@Benchmark
+	public int staticLong() throws IOException {
+		os.reset();
+		for(int i = 0; i < N; i++) {
+			Bytes.wtl(longs[i], os);
+		}
+		return os.size();
+	}
+	
+	@Benchmark
+	public int writerLong() throws IOException {
+		os.reset();
+		for(int i = 0; i < N; i++) {
+			w.writeLong(longs[i]);
+		}
+		w.flush();
+		return os.size();
+	}
+	
+	@Benchmark
+	public int staticDouble() throws IOException {
+		os.reset();
+		for(int i = 0; i < N; i++) {
+			Bytes.wtd(doubles[i], os);
+		}
+		return os.size();
+	}
+	
+	@Benchmark
+	public int writerDouble() throws IOException {
+		os.reset();
+		for(int i = 0; i < N; i++) {
+			w.writeDouble(doubles[i]);
+		}
+		w.flush();
+		return os.size();
+	}
+	
+	@Benchmark
+	public int writerDoubleArray() throws IOException {
+		os.reset();
+		w.writeDoubles(doubles);
+		w.flush();
+		return os.size();
+	}
+}
@@ -0,0 +1,171 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import celestibytes.miscutils.util.Bytes;
+import celestibytes.miscutils.util.TypedReader;
+import celestibytes.miscutils.util.TypedWriter;
+import celestibytes.miscutils.util.ValueCursor;
+
+/** Streams of records made of an int, a double, a string and a long, in records per second */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(MixedBench.N)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MixedBench {
+	static final int N = 512;
+	
+	private int[] ints;
+	private double[] doubles;
+	private String[] strings;
+	private long[] longs;
+	private ByteArrayOutputStream os;
+	private TypedWriter w;
+	private byte[] records;
+	
+	@Setup
+	public void setup() throws IOException {
+		ints = Data.ints(N);
+		doubles = Data.doubles(N);
+		strings = Data.strings(N, 16);
+		longs = Data.longs(N);
+		os = new ByteArrayOutputStream(N * 48);
+		w = new TypedWriter(os);
+		writerEncode();
+		records = os.toByteArray();
+	}
+	
+	@Benchmark
+	public int staticEncode() throws IOException {
+		os.reset();
+		for(int i = 0; i < N; i++) {
+			Bytes.wti(ints[i], os);
+			Bytes.wtd(doubles[i], os);
+			Bytes.wtst(strings[i], os);
+			Bytes.wtl(longs[i], os);
+		}
+		return os.size();
+	}
+	
+	@Benchmark
+	public int writerEncode() throws IOException {
+		os.reset();
+		for(int i = 0; i < N; i++) {
+			w.writeInt(ints[i]);
+			w.writeDouble(doubles[i]);
+			w.writeString(strings[i]);
+			w.writeLong(longs[i]);
+		}
+		w.flush();
+		return os.size();
+	}
+	
+	@Benchmark
+	public void staticDecode(Blackhole bh) throws IOException {
+		ByteArrayInputStream is = new ByteArrayInputStream(records);
+		byte[] b;
+		for(int i = 0; i < N; i++) {
+			b = Bytes.read(is);
+			if(Bytes.vi(b)) {
+				bh.consume(Bytes.i(b));
+			}
+			b = Bytes.read(is);
+			if(Bytes.vd(b)) {
+				bh.consume(Bytes.d(b));
+			}
+			b = Bytes.read(is);
+			if(Bytes.vst(b)) {
+				bh.consume(Bytes.st(b));
+			}
+			b = Bytes.read(is);
+			if(Bytes.vl(b)) {
+				bh.consume(Bytes.l(b));
+			}
+		}
+	}
+	
+	@Benchmark
+	public void readerDecode(Blackhole bh) throws IOException {
+		TypedReader r = new TypedReader(new ByteArrayInputStream(records));
+		for(int i = 0; i < N; i++) {
+			bh.consume(r.readInt());
+			bh.consume(r.readDouble());
+			bh.consume(r.readString());
+			bh.consume(r.readLong());
+		}
+	}
+	
+	@Benchmark
+	public void readerSkip(Blackhole bh) throws IOException {
+		TypedReader r = new TypedReader(new ByteArrayInputStream(records));
+		for(int i = 0; i < N; i++) {
+			bh.consume(r.readInt());
+			r.skip();
+			r.skip();
+			bh.consume(r.readLong());
+		}
+	}
+	
+	@Benchmark
+	public void staticFilterLongs(Blackhole bh) throws IOException {
+		ByteArrayInputStream is = new ByteArrayInputStream(records);
+		byte[] b;
+		while((b = Bytes.read(is)) != null) {
+			if(b[0] == Bytes.TAG_LONG) {
+				bh.consume(Bytes.l(b));
+			}
+		}
+	}
+	
+	@Benchmark
+	public void cursorFilterLongs(Blackhole bh) throws IOException {
+		ValueCursor c = new ValueCursor(new ByteArrayInputStream(records)).filter(Bytes.TAG_LONG);
+		while(c.next()) {
+			bh.consume(c.getLong());
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import celestibytes.miscutils.util.RecordCodec;
+import celestibytes.miscutils.util.TypedReader;
+import celestibytes.miscutils.util.TypedWriter;
+
+/** RecordCodec against hand-written reads of the same fixed-shape records, in records per second */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(RecordBench.N)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordBench {
+	static final int N = 4096;
+	
+	public static class Sample {
+		int id;
+		long time;
+		double x, y, z;
+	}
+	
+	private final RecordCodec<Sample> codec = new RecordCodec<Sample>(Sample.class, "id", "time", "x", "y", "z");
+	private final Sample sample = new Sample();
+	private byte[] records;
+	
+	@Setup
+	public void setup() throws IOException {
+		int[] ints = Data.ints(N);
+		double[] doubles = Data.doubles(N + 2);
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		TypedWriter w = new TypedWriter(os);
+		for(int i = 0; i < N; i++) {
+			sample.id = ints[i];
+			sample.time = i;
+			sample.x = doubles[i];
+			sample.y = doubles[i + 1];
+			sample.z = doubles[i + 2];
+			codec.write(sample, w);
+		}
+		w.flush();
+		records = os.toByteArray();
+	}
+	
+	@Benchmark
+	public Sample handWritten() throws IOException {
+		TypedReader r = new TypedReader(new ByteArrayInputStream(records));
+		for(int i = 0; i < N; i++) {
+			sample.id = r.readInt();
+			sample.time = r.readLong();
+			sample.x = r.readDouble();
+			sample.y = r.readDouble();
+			sample.z = r.readDouble();
+		}
+		return sample;
+	}
+	
+	@Benchmark
+	public Sample codecRead() throws IOException {
+		TypedReader r = new TypedReader(new ByteArrayInputStream(records));
+		for(int i = 0; i < N; i++) {
+			codec.read(r, sample);
+		}
+		return sample;
+	}
+	
+	@Benchmark
+	public Sample codecReadTrusted() throws IOException {
+		TypedReader r = new TypedReader(new ByteArrayInputStream(records));
+		for(int i = 0; i < N; i++) {
+			codec.readTrusted(r, sample);
+		}
+		return sample;
+	}
+}
@@ -0,0 +1,203 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import celestibytes.miscutils.util.Bytes;
+import celestibytes.miscutils.util.StringCache;
+import celestibytes.miscutils.util.TypedReader;
+import celestibytes.miscutils.util.TypedWriter;
+
+/** Null-terminated and UTF-8 string paths, in strings per second */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(StringBench.N)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringBench {
+	static final int N = 256;
+	
+	@Param({"8", "64", "1024"})
+	public int length;
+	
+	private String[] strings;
+	private ByteArrayOutputStream os;
+	private TypedWriter w;
+	private byte[] nullTerminated;
+	private byte[] utf8;
+	/** Null-terminated strings drawn from 16 distinct keys */
+	private byte[] keys;
+	private StringCache cache = new StringCache();
+	
+	@Setup
+	public void setup() throws IOException {
+		strings = Data.strings(N, length);
+		os = new ByteArrayOutputStream(N * (length + 8));
+		w = new TypedWriter(os);
+		
+		for(int i = 0; i < N; i++) {
+			w.writeString(strings[i]);
+		}
+		w.flush();
+		nullTerminated = os.toByteArray();
+		
+		os.reset();
+		for(int i = 0; i < N; i++) {
+			w.writeUtf(strings[i]);
+		}
+		w.flush();
+		utf8 = os.toByteArray();
+		
+		os.reset();
+		for(int i = 0; i < N; i++) {
+			w.writeString(strings[i & 15]);
+		}
+		w.flush();
+		keys = os.toByteArray();
+	}
+	
+	@Benchmark
+	public int staticWriteString() throws IOException {
+		os.reset();
+		for(int i = 0; i < N; i++) {
+			Bytes.wtst(strings[i], os);
+		}
+		return os.size();
+	}
+	
+	@Benchmark
+	public int writerWriteString() throws IOException {
+		os.reset();
+		for(int i = 0; i < N; i++) {
+			w.writeString(strings[i]);
+		}
+		w.flush();
+		return os.size();
+	}
+	
+	@Benchmark
+	public int staticWriteUtf() throws IOException {
+		os.reset();
+		for(int i = 0; i < N; i++) {
+			Bytes.wtu(strings[i], os);
+		}
+		return os.size();
+	}
+	
+	@Benchmark
+	public int writerWriteUtf() throws IOException {
+		os.reset();
+		for(int i = 0; i < N; i++) {
+			w.writeUtf(strings[i]);
+		}
+		w.flush();
+		return os.size();
+	}
+	
+	@Benchmark
+	public void staticReadString(Blackhole bh) throws IOException {
+		ByteArrayInputStream is = new ByteArrayInputStream(nullTerminated);
+		for(int i = 0; i < N; i++) {
+			bh.consume(Bytes.st(Bytes.read(is)));
+		}
+	}
+	
+	@Benchmark
+	public void readerReadString(Blackhole bh) throws IOException {
+		TypedReader r = new TypedReader(new ByteArrayInputStream(nullTerminated));
+		for(int i = 0; i < N; i++) {
+			bh.consume(r.readString());
+		}
+	}
+	
+	@Benchmark
+	public void staticReadUtf(Blackhole bh) throws IOException {
+		ByteArrayInputStream is = new ByteArrayInputStream(utf8);
+		for(int i = 0; i < N; i++) {
+			bh.consume(Bytes.u(Bytes.read(is)));
+		}
+	}
+	
+	@Benchmark
+	public void readerReadUtf(Blackhole bh) throws IOException {
+		TypedReader r = new TypedReader(new ByteArrayInputStream(utf8));
+		for(int i = 0; i < N; i++) {
+			bh.consume(r.readString());
+		}
+	}
+	
+	@Benchmark
+	public void readerReadViewHash(Blackhole bh) throws IOException {
+		TypedReader r = new TypedReader(new ByteArrayInputStream(nullTerminated));
+		for(int i = 0; i < N; i++) {
+			bh.consume(r.readView().hashCode());
+		}
+	}
+	
+	@Benchmark
+	public void readerReadStringHash(Blackhole bh) throws IOException {
+		TypedReader r = new TypedReader(new ByteArrayInputStream(nullTerminated));
+		for(int i = 0; i < N; i++) {
+			bh.consume(r.readString().hashCode());
+		}
+	}
+	
+	@Benchmark
+	public void readerReadKeys(Blackhole bh) throws IOException {
+		TypedReader r = new TypedReader(new ByteArrayInputStream(keys));
+		for(int i = 0; i < N; i++) {
+			bh.consume(r.readString());
+		}
+	}
+	
+	@Benchmark
+	public void readerReadKeysCached(Blackhole bh) throws IOException {
+		TypedReader r = new TypedReader(new ByteArrayInputStream(keys));
+		for(int i = 0; i < N; i++) {
+			bh.consume(r.readString(cache));
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import celestibytes.miscutils.lwjgl.opengl.RBH;
+import celestibytes.miscutils.lwjgl.opengl.StreamRing;
+import celestibytes.miscutils.lwjgl.opengl.VertexBatch;
+import celestibytes.miscutils.lwjgl.opengl.VertexBuilder;
+import celestibytes.miscutils.lwjgl.opengl.VertexBuffer;
+
+/** RBH vertex buffer filling against the no-GL stand-ins, in vertices per second */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(VertexBench.N)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VertexBench {
+	static final int N = 4096;
+	
+	private final RBH rbh = RBH.INSTANCE;
+	private VertexBuffer retained;
+	private StreamRing mapped;
+	private StreamRing orphaned;
+	private final VertexBuilder builder = new VertexBuilder();
+	
+	@Setup
+	public void setup() {
+		rbh.startDrawingQuads();
+		for(int i = 0; i < N; i++) {
+			rbh.writeVertexTP(0.5f, 0.25f, i, i + 1, i + 2);
+		}
+		retained = rbh.upload();
+		mapped = new StreamRing(RBH.BUFFER_SIZE, StreamRing.DEFAULT_SEGMENTS, true);
+		orphaned = new StreamRing(RBH.BUFFER_SIZE, StreamRing.DEFAULT_SEGMENTS, false);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		retained.delete();
+		mapped.delete();
+		orphaned.delete();
+	}
+	
+	@Benchmark
+	public int writeVertexP() {
+		rbh.startDrawingQuads();
+		for(int i = 0; i < N; i++) {
+			rbh.writeVertexP(i, i + 1, i + 2);
+		}
+		int ret = rbh.getVertexCount();
+		rbh.draw();
+		return ret;
+	}
+	
+	@Benchmark
+	public int writeVertexTP() {
+		rbh.startDrawingQuads();
+		for(int i = 0; i < N; i++) {
+			rbh.writeVertexTP(0.5f, 0.25f, i, i + 1, i + 2);
+		}
+		int ret = rbh.getVertexCount();
+		rbh.draw();
+		return ret;
+	}
+	
+	@Benchmark
+	public int writeVertexTCP() {
+		rbh.startDrawingQuads();
+		for(int i = 0; i < N; i++) {
+			rbh.writeVertexTCP(0.5f, 0.25f, 255, i, 0, 255, i, i + 1, i + 2);
+		}
+		int ret = rbh.getVertexCount();
+		rbh.draw();
+		return ret;
+	}
+	
+	/** Redrawing uploaded vertices, against refilling the buffer every frame in writeVertexTP */
+	@Benchmark
+	public int retainedDraw() {
+		retained.draw();
+		return retained.getVertexCount();
+	}
+	
+	/** writeVertexTP straight into a persistently mapped ring segment */
+	@Benchmark
+	public int mappedWriteVertexTP() {
+		mapped.beginFrame();
+		rbh.setStreamRing(mapped);
+		int ret = writeVertexTP();
+		rbh.setStreamRing(null);
+		mapped.endFrame();
+		return ret;
+	}
+	
+	/** writeVertexTP into client memory copied into an orphaned buffer */
+	@Benchmark
+	public int orphanedWriteVertexTP() {
+		orphaned.beginFrame();
+		rbh.setStreamRing(orphaned);
+		int ret = writeVertexTP();
+		rbh.setStreamRing(null);
+		orphaned.endFrame();
+		return ret;
+	}
+	
+	/** writeVertexTP into a thread-confined builder, the batch drawn through RBH */
+	@Benchmark
+	public int builderWriteVertexTP() {
+		builder.startDrawingQuads();
+		for(int i = 0; i < N; i++) {
+			builder.writeVertexTP(0.5f, 0.25f, i, i + 1, i + 2);
+		}
+		VertexBatch batch = builder.build();
+		rbh.draw(batch);
+		batch.release();
+		return batch.getVertexCount();
+	}
+}
@@ -0,0 +1,87 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package org.lwjgl.opengl;
+
+import java.nio.ByteBuffer;
+
+/** Benchmark stand-in for LWJGL's GL11, every call is a no-op so no context is needed */
+public final class GL11 {
+	public static final int GL_POINTS = 0x0;
+	public static final int GL_LINES = 0x1;
+	public static final int GL_TRIANGLES = 0x4;
+	public static final int GL_QUADS = 0x7;
+	public static final int GL_TEXTURE_2D = 0xDE1;
+	public static final int GL_BLEND = 0xBE2;
+	public static final int GL_SRC_ALPHA = 0x302;
+	public static final int GL_ONE_MINUS_SRC_ALPHA = 0x303;
+	public static final int GL_FLOAT = 0x1406;
+	public static final int GL_UNSIGNED_BYTE = 0x1401;
+	public static final int GL_VERTEX_ARRAY = 0x8074;
+	public static final int GL_COLOR_ARRAY = 0x8076;
+	public static final int GL_TEXTURE_COORD_ARRAY = 0x8078;
+	
+	private GL11() {
+	}
+	
+	public static void glEnable(int cap) {
+	}
+	
+	public static void glDisable(int cap) {
+	}
+	
+	public static void glBindTexture(int target, int texture) {
+	}
+	
+	public static void glBlendFunc(int sfactor, int dfactor) {
+	}
+	
+	public static void glEnableClientState(int cap) {
+	}
+	
+	public static void glDisableClientState(int cap) {
+	}
+	
+	public static void glTexCoordPointer(int size, int type, int stride, ByteBuffer pointer) {
+	}
+	
+	public static void glColorPointer(int size, boolean unsigned, int stride, ByteBuffer pointer) {
+	}
+	
+	public static void glVertexPointer(int size, int type, int stride, ByteBuffer pointer) {
+	}
+	
+	public static void glTexCoordPointer(int size, int type, int stride, long offset) {
+	}
+	
+	public static void glColorPointer(int size, int type, int stride, long offset) {
+	}
+	
+	public static void glVertexPointer(int size, int type, int stride, long offset) {
+	}
+	
+	public static void glDrawArrays(int mode, int first, int count) {
+	}
+}
@@ -0,0 +1,63 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package org.lwjgl.opengl;
+
+import java.nio.ByteBuffer;
+
+public final class GL15 {
+	public static final int GL_ARRAY_BUFFER = 0x8892;
+	public static final int GL_STREAM_DRAW = 0x88E0;
+	public static final int GL_STATIC_DRAW = 0x88E4;
+	public static final int GL_DYNAMIC_DRAW = 0x88E8;
+	
+	private static int names = 0;
+	
+	private GL15() {
+	}
+	
+	public static int glGenBuffers() {
+		return ++names;
+	}
+	
+	public static void glDeleteBuffers(int buffer) {
+	}
+	
+	public static void glBindBuffer(int target, int buffer) {
+	}
+	
+	public static void glBufferData(int target, ByteBuffer data, int usage) {
+	}
+	
+	public static void glBufferData(int target, long size, int usage) {
+	}
+	
+	public static void glBufferSubData(int target, long offset, ByteBuffer data) {
+	}
+	
+	public static boolean glUnmapBuffer(int target) {
+		return true;
+	}
+}
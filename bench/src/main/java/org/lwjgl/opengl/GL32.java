@@ -0,0 +1,49 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package org.lwjgl.opengl;
+
+public final class GL32 {
+	public static final int GL_SYNC_FLUSH_COMMANDS_BIT = 0x1;
+	public static final int GL_SYNC_GPU_COMMANDS_COMPLETE = 0x9117;
+	public static final int GL_ALREADY_SIGNALED = 0x911A;
+	public static final int GL_TIMEOUT_EXPIRED = 0x911B;
+	public static final int GL_CONDITION_SATISFIED = 0x911C;
+	public static final int GL_WAIT_FAILED = 0x911D;
+	
+	private GL32() {
+	}
+	
+	public static GLSync glFenceSync(int condition, int flags) {
+		return new GLSync(0);
+	}
+	
+	public static int glClientWaitSync(GLSync sync, int flags, long timeout) {
+		return GL_ALREADY_SIGNALED;
+	}
+	
+	public static void glDeleteSync(GLSync sync) {
+	}
+}
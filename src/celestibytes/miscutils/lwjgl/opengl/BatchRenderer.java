@@ -0,0 +1,248 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+
+package celestibytes.miscutils.lwjgl.opengl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.lwjgl.opengl.GL11;
+
+import celestibytes.miscutils.util.BufferPool;
+
+/**
+ * Collects the batches of a frame and draws them with as few state changes and draw calls as possible.
+ * {@link #flush()} sorts them by texture and draw mode, concatenates runs with the same state into one
+ * draw call and only changes the texture or blend function when it differs from the previous draw.
+ * Opaque batches are drawn first. Blended batches follow in the order they were added, only neighbours
+ * with the same state being merged, unless {@link #setSortBlended(boolean)} allows reordering them too.
+ * Must be used on the render thread.
+ */
+public class BatchRenderer {
+	/** Opaque first, then by texture, blend function and draw mode */
+	private static final Comparator<VertexBatch> ORDER = new Comparator<VertexBatch>() {
+		@Override
+		public int compare(VertexBatch a, VertexBatch b) {
+			int c = Boolean.compare(a.isBlending(), b.isBlending());
+			if(c == 0) {
+				c = Integer.compare(a.getTexture(), b.getTexture());
+			}
+			if(c == 0 && a.isBlending()) {
+				c = Integer.compare(a.getBlendSrc(), b.getBlendSrc());
+				if(c == 0) {
+					c = Integer.compare(a.getBlendDst(), b.getBlendDst());
+				}
+			}
+			if(c == 0) {
+				c = Integer.compare(a.getDrawMode(), b.getDrawMode());
+			}
+			return c;
+		}
+	};
+	
+	/** Only opaque batches are reordered */
+	private static final Comparator<VertexBatch> OPAQUE_ORDER = new Comparator<VertexBatch>() {
+		@Override
+		public int compare(VertexBatch a, VertexBatch b) {
+			if(a.isBlending() || b.isBlending()) {
+				return Boolean.compare(a.isBlending(), b.isBlending());
+			}
+			return ORDER.compare(a, b);
+		}
+	};
+	
+	private final RBH rbh;
+	private final List<VertexBatch> batches = new ArrayList<VertexBatch>();
+	private boolean sortBlended = false;
+	private ByteBuffer merged;
+	private int drawCalls = 0;
+	private int stateChanges = 0;
+	
+	public BatchRenderer() {
+		this(RBH.INSTANCE);
+	}
+	
+	public BatchRenderer(RBH rbh) {
+		this.rbh = rbh;
+	}
+	
+	/** Queues a batch for the next flush, which draws and releases it */
+	public void add(VertexBatch batch) {
+		if(batch.getVertexCount() > 0) {
+			batches.add(batch);
+		} else {
+			batch.release();
+		}
+	}
+	
+	/** Whether blended batches may be reordered by state, which is only correct if they don't overlap. Off by default */
+	public void setSortBlended(boolean sortBlended) {
+		this.sortBlended = sortBlended;
+	}
+	
+	public boolean getSortBlended() {
+		return sortBlended;
+	}
+	
+	/** Number of batches waiting for flush */
+	public int size() {
+		return batches.size();
+	}
+	
+	/** Draws and releases the queued batches, leaving textures and blending disabled. Returns the number of draw calls */
+	public int flush() {
+		if(rbh.isBusy()) {
+			System.err.println("RBH is currently busy!");
+			return 0;
+		}
+		
+		Collections.sort(batches, sortBlended ? ORDER : OPAQUE_ORDER);
+		drawCalls = 0;
+		stateChanges = 0;
+		int texture = 0;
+		boolean blending = false;
+		int blendSrc = -1, blendDst = -1;
+		// Whatever was enabled before must not leak into the opaque and untextured batches
+		GLStateCache.INSTANCE.disable(GL11.GL_TEXTURE_2D);
+		GLStateCache.INSTANCE.disable(GL11.GL_BLEND);
+		// The arrays only need restoring after the last batch
+		boolean lazy = GLStateCache.INSTANCE.isLazy();
+		GLStateCache.INSTANCE.setLazy(true);
+		
+		try {
+			for(int i = 0, n = batches.size(); i < n;) {
+				VertexBatch first = batches.get(i);
+				int end = i + 1;
+				if(mergeable(first.getDrawMode())) {
+					while(end < n && ORDER.compare(first, batches.get(end)) == 0) {
+						end++;
+					}
+				}
+				
+				if(first.getTexture() != texture) {
+					if(texture == 0) {
+						GLStateCache.INSTANCE.enable(GL11.GL_TEXTURE_2D);
+					}
+					texture = first.getTexture();
+					GLStateCache.INSTANCE.bindTexture(texture);
+					if(texture == 0) {
+						GLStateCache.INSTANCE.disable(GL11.GL_TEXTURE_2D);
+					}
+					stateChanges++;
+				}
+				if(first.isBlending() != blending) {
+					blending = first.isBlending();
+					if(blending) {
+						GLStateCache.INSTANCE.enable(GL11.GL_BLEND);
+					} else {
+						GLStateCache.INSTANCE.disable(GL11.GL_BLEND);
+					}
+					stateChanges++;
+				}
+				if(blending && (first.getBlendSrc() != blendSrc || first.getBlendDst() != blendDst)) {
+					blendSrc = first.getBlendSrc();
+					blendDst = first.getBlendDst();
+					GLStateCache.INSTANCE.blendFunc(blendSrc, blendDst);
+					stateChanges++;
+				}
+				
+				draw(i, end);
+				drawCalls++;
+				i = end;
+			}
+		} finally {
+			for(VertexBatch batch : batches) {
+				batch.release();
+			}
+			batches.clear();
+			GLStateCache.INSTANCE.setLazy(lazy);
+			GLStateCache.INSTANCE.finish();
+			if(texture != 0) {
+				GLStateCache.INSTANCE.bindTexture(0);
+				GLStateCache.INSTANCE.disable(GL11.GL_TEXTURE_2D);
+			}
+			if(blending) {
+				GLStateCache.INSTANCE.disable(GL11.GL_BLEND);
+			}
+		}
+		return drawCalls;
+	}
+	
+	/** Draw calls issued by the last flush */
+	public int getDrawCalls() {
+		return drawCalls;
+	}
+	
+	/** Texture and blend state changes made by the last flush */
+	public int getStateChanges() {
+		return stateChanges;
+	}
+	
+	/** Returns the merge buffer to the pool, it is taken again if needed */
+	public void release() {
+		if(merged != null) {
+			BufferPool.SHARED.release(merged);
+			merged = null;
+		}
+	}
+	
+	/** Draws the batches from start to end, which have the same state, in one call */
+	private void draw(int start, int end) {
+		VertexBatch first = batches.get(start);
+		if(end - start == 1) {
+			rbh.drawVertices(first.getData(), first.getDrawMode(), first.getVertexCount(), first.isTextured());
+			return;
+		}
+		
+		int size = 0, count = 0;
+		boolean texCoords = false;
+		for(int i = start; i < end; i++) {
+			VertexBatch batch = batches.get(i);
+			size += batch.getByteSize();
+			count += batch.getVertexCount();
+			texCoords |= batch.isTextured();
+		}
+		
+		if(merged == null || merged.capacity() < size) {
+			release();
+			merged = BufferPool.SHARED.direct(size);
+		}
+		merged.clear();
+		for(int i = start; i < end; i++) {
+			merged.put(batches.get(i).getData());
+		}
+		merged.flip();
+		rbh.drawVertices(merged, first.getDrawMode(), count, texCoords);
+	}
+	
+	/** Whether separate primitives of the mode can be drawn from one concatenated array */
+	private static boolean mergeable(int mode) {
+		return mode == GL11.GL_POINTS || mode == GL11.GL_LINES || mode == GL11.GL_TRIANGLES || mode == GL11.GL_QUADS;
+	}
+}
@@ -0,0 +1,274 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+
+package celestibytes.miscutils.lwjgl.opengl;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GLContext;
+
+/**
+ * Shadow of the GL state RBH changes: GL_TEXTURE_2D and the bound 2D texture of each texture unit, GL_BLEND,
+ * the blend function, the vertex, color and texture coordinate client arrays and the bound GL_ARRAY_BUFFER.
+ * State is unknown until first set, the texture state until the active unit is set with {@link #activeTexture(int)}.
+ * Must be used on the thread owning the GL context.
+ * <p>
+ * By default only the client arrays and array buffer are cached, texture and blend calls are always passed on so
+ * GL code mixing in its own calls keeps working. Draws leave the client arrays disabled and no array buffer bound,
+ * like plain GL11 code expects. In lazy mode every call that wouldn't change anything is left out and draws leave
+ * the client arrays as they set them, so GL code that doesn't go through the cache must call {@link #restore()}
+ * before and {@link #invalidate()} after changing any of the state.
+ */
+public class GLStateCache {
+	private static final int UNKNOWN = -1;
+	private static final int[] CAPS = {GL11.GL_BLEND};
+	/** GL_TEXTURE0 to GL_TEXTURE31 */
+	private static final int UNITS = 32;
+	private static final int[] CLIENT_STATES = {GL11.GL_VERTEX_ARRAY, GL11.GL_COLOR_ARRAY, GL11.GL_TEXTURE_COORD_ARRAY};
+	
+	public static final GLStateCache INSTANCE = new GLStateCache();
+	
+	/** 1 enabled, 0 disabled, UNKNOWN */
+	private final int[] caps = new int[CAPS.length];
+	private final int[] clientStates = new int[CLIENT_STATES.length];
+	/** GL_TEXTURE_2D enabled and bound texture of each unit */
+	private final int[] texture2D = new int[UNITS];
+	private final int[] textures = new int[UNITS];
+	/** Index of the active unit, UNKNOWN */
+	private int unit;
+	private int blendSrc, blendDst;
+	private int arrayBuffer;
+	private boolean lazy = false;
+	private long issued = 0;
+	private long skipped = 0;
+	
+	public GLStateCache() {
+		invalidate();
+	}
+	
+	public void enable(int cap) {
+		int[] state = capState(cap);
+		int i = state == texture2D ? unit : indexOf(CAPS, cap);
+		if(lazy && i != -1 && state[i] == 1) {
+			skipped++;
+			return;
+		}
+		GL11.glEnable(cap);
+		issued++;
+		if(i != -1) {
+			state[i] = 1;
+		}
+	}
+	
+	public void disable(int cap) {
+		int[] state = capState(cap);
+		int i = state == texture2D ? unit : indexOf(CAPS, cap);
+		if(lazy && i != -1 && state[i] == 0) {
+			skipped++;
+			return;
+		}
+		GL11.glDisable(cap);
+		issued++;
+		if(i != -1) {
+			state[i] = 0;
+		}
+	}
+	
+	public void enableClientState(int cap) {
+		int i = indexOf(CLIENT_STATES, cap);
+		if(i != -1 && clientStates[i] == 1) {
+			skipped++;
+			return;
+		}
+		GL11.glEnableClientState(cap);
+		issued++;
+		if(i != -1) {
+			clientStates[i] = 1;
+		}
+	}
+	
+	public void disableClientState(int cap) {
+		int i = indexOf(CLIENT_STATES, cap);
+		if(i != -1 && clientStates[i] == 0) {
+			skipped++;
+			return;
+		}
+		GL11.glDisableClientState(cap);
+		issued++;
+		if(i != -1) {
+			clientStates[i] = 0;
+		}
+	}
+	
+	/** Selects the texture unit the texture calls apply to, GL_TEXTURE0 and up */
+	public void activeTexture(int texture) {
+		int i = texture - GL13.GL_TEXTURE0;
+		if(i < 0 || i >= UNITS) {
+			i = UNKNOWN;
+		}
+		if(lazy && i != UNKNOWN && unit == i) {
+			skipped++;
+			return;
+		}
+		GL13.glActiveTexture(texture);
+		issued++;
+		unit = i;
+	}
+	
+	/** Binds a GL_TEXTURE_2D texture to the active unit */
+	public void bindTexture(int tex) {
+		if(lazy && unit != UNKNOWN && textures[unit] == tex) {
+			skipped++;
+			return;
+		}
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, tex);
+		issued++;
+		if(unit != UNKNOWN) {
+			textures[unit] = tex;
+		}
+	}
+	
+	public void blendFunc(int sfactor, int dfactor) {
+		if(lazy && blendSrc == sfactor && blendDst == dfactor) {
+			skipped++;
+			return;
+		}
+		GL11.glBlendFunc(sfactor, dfactor);
+		issued++;
+		blendSrc = sfactor;
+		blendDst = dfactor;
+	}
+	
+	/** Binds a GL_ARRAY_BUFFER, 0 for client-side arrays. Unbinding is skipped on contexts without buffer objects */
+	public void bindArrayBuffer(int buffer) {
+		if(arrayBuffer == buffer || (buffer == 0 && arrayBuffer == UNKNOWN && !GLContext.getCapabilities().OpenGL15)) {
+			skipped++;
+			arrayBuffer = buffer;
+			return;
+		}
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, buffer);
+		issued++;
+		arrayBuffer = buffer;
+	}
+	
+	/** Call when a texture is deleted, GL unbinds it and its name may be reused */
+	public void textureDeleted(int tex) {
+		for(int i = 0; i < UNITS; i++) {
+			if(textures[i] == tex) {
+				textures[i] = 0;
+			}
+		}
+	}
+	
+	/** Call when a buffer object is deleted, GL unbinds it and its name may be reused */
+	public void bufferDeleted(int buffer) {
+		if(arrayBuffer == buffer) {
+			arrayBuffer = 0;
+		}
+	}
+	
+	/** Disables the client arrays */
+	public void disableClientStates() {
+		for(int cap : CLIENT_STATES) {
+			disableClientState(cap);
+		}
+	}
+	
+	/** Disables the client arrays and unbinds the array buffer, which lazy draws leave set. Call before GL code that doesn't go through the cache */
+	public void restore() {
+		disableClientStates();
+		bindArrayBuffer(0);
+	}
+	
+	/** Skips texture and blend calls that wouldn't change anything and leaves the client arrays and array buffer set after draws, see {@link #restore()}. Off by default */
+	public void setLazy(boolean lazy) {
+		this.lazy = lazy;
+	}
+	
+	public boolean isLazy() {
+		return lazy;
+	}
+	
+	/** Called once done drawing, restores the state unless lazy */
+	void finish() {
+		if(!lazy) {
+			restore();
+		}
+	}
+	
+	/** Forgets all state, the next call of each kind is passed on. Call after GL code that doesn't go through the cache */
+	public void invalidate() {
+		for(int i = 0; i < caps.length; i++) {
+			caps[i] = UNKNOWN;
+		}
+		for(int i = 0; i < clientStates.length; i++) {
+			clientStates[i] = UNKNOWN;
+		}
+		for(int i = 0; i < UNITS; i++) {
+			texture2D[i] = UNKNOWN;
+			textures[i] = UNKNOWN;
+		}
+		unit = UNKNOWN;
+		blendSrc = UNKNOWN;
+		blendDst = UNKNOWN;
+		arrayBuffer = UNKNOWN;
+	}
+	
+	/** Number of calls passed on to GL */
+	public long getIssued() {
+		return issued;
+	}
+	
+	/** Number of calls left out because they wouldn't have changed anything */
+	public long getSkipped() {
+		return skipped;
+	}
+	
+	public void resetCounters() {
+		issued = 0;
+		skipped = 0;
+	}
+	
+	@Override
+	public String toString() {
+		return "GLStateCache[issued=" + issued + ", skipped=" + skipped + "]";
+	}
+	
+	/** State array of a capability, per unit for GL_TEXTURE_2D */
+	private int[] capState(int cap) {
+		return cap == GL11.GL_TEXTURE_2D ? texture2D : caps;
+	}
+	
+	private static int indexOf(int[] values, int v) {
+		for(int i = 0; i < values.length; i++) {
+			if(values[i] == v) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
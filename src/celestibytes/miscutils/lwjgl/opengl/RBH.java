@@ -25,9 +25,14 @@
 package celestibytes.miscutils.lwjgl.opengl;
 
 import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+
+import celestibytes.miscutils.util.BufferPool;
 
 public class RBH {
 	// Buffer format(bytes): UUUU VVVV R G B A XXXX YYYY ZZZZ [NX][NX][NX][NX] [NY][NY][NY][NY] [NZ][NZ][NZ][NZ] 
@@ -44,6 +49,10 @@ public class RBH {
 	
 	private ByteBuffer bbuf;
 	private ByteBuffer[] bbufs;
+	private StreamRing ring;
+	private final Queue<VertexBatch> submitted = new ConcurrentLinkedQueue<VertexBatch>();
+	/** Whether bbuf is space allocated in the current segment of the ring */
+	private boolean streamed = false;
 	private boolean useNormals = false;
 	private boolean skipMode = false;
 	private boolean useTexture = false;
@@ -67,16 +76,15 @@ public class RBH {
 		bbufs = new ByteBuffer[bufferCount];
 		
 		for(int i=0;i<bufferCount;i++) {
-			bbufs[i] = BufferUtils.createByteBuffer(bufferSize);
+			bbufs[i] = BufferPool.SHARED.direct(bufferSize);
 		}
 		
 		bbuf = bbufs[0];
 	}
 	
 	private void reset(/*Hey, I'm a very ununpurposeful comment*/) {
-		bbuf = bbufs[0];
-		bbuf.position(0);
-		bbuf.limit(bbuf.capacity());
+		bbuf = clientBuffer();
+		streamed = false;
 		
 		busy = false;
 		
@@ -101,11 +109,50 @@ public class RBH {
 		translZ = 0f;
 	}
 	
+	private ByteBuffer clientBuffer() {
+		ByteBuffer ret = bbufs[0];
+		ret.position(0);
+		ret.limit(ret.capacity());
+		return ret;
+	}
+	
+	/** Whether the ring's current frame has room for at least one vertex */
+	private boolean canStream() {
+		return ring != null && ring.inFrame() && ring.remaining() >= BUFFER_STRIDE;
+	}
+	
+	/** Moves the vertices written so far out of the ring into a client-side buffer once the space left in the segment is full */
+	private void spill() {
+		ByteBuffer buf = clientBuffer();
+		bbuf.flip();
+		buf.put(bbuf);
+		bbuf = buf;
+		streamed = false;
+	}
+	
 	private void afterOper() {
 		disableTexture();
 		disableBlending();
 	}
 	
+	/**
+	 * Draws through the streaming ring from the next batch on, vertices being written straight into the segment
+	 * of the ring's current frame. Batches drawn outside of its beginFrame() and endFrame() or that don't fit into the
+	 * space left in the segment, at most the client-side buffer size, are drawn from client-side arrays. Null goes back
+	 * to client-side arrays, the previous ring isn't deleted
+	 */
+	public void setStreamRing(StreamRing ring) {
+		if(busy) {
+			System.err.println("RBH is currently busy!");
+			return;
+		}
+		this.ring = ring;
+	}
+	
+	public StreamRing getStreamRing() {
+		return ring;
+	}
+	
 	public void attachBuffer(ByteBuffer buffer) {
 		if(busy) {
 			System.err.println("RBH is currently busy!");
@@ -117,6 +164,7 @@ public class RBH {
 		attachedBufferPos = buffer.position();
 		
 		bbuf = buffer;
+		streamed = false;
 		busy = true;
 		skipMode = true;
 	}
@@ -135,6 +183,12 @@ public class RBH {
 			return;
 		}
 		reset();
+		if(canStream()) {
+			// Capped so that a spill always fits into the client-side buffer
+			bbuf = ring.allocate();
+			bbuf.limit(Math.min(bbuf.capacity(), bbufs[0].capacity()));
+			streamed = true;
+		}
 		
 		this.drawMode = drawMode;
 		busy = true;
@@ -148,7 +202,15 @@ public class RBH {
 	}
 	
 	public ByteBuffer createBuffer() {
-		ByteBuffer ret = BufferUtils.createByteBuffer(bbuf.position());
+		return copyBuffer(BufferUtils.createByteBuffer(bbuf.position()));
+	}
+	
+	/** Like createBuffer() but the copy is taken from the pool, release it back to the pool once it isn't needed */
+	public ByteBuffer createBuffer(BufferPool pool) {
+		return copyBuffer(pool.direct(bbuf.position()));
+	}
+	
+	private ByteBuffer copyBuffer(ByteBuffer ret) {
 		bbuf.limit(bbuf.position());
 		bbuf.position(0);
 		ret.put(bbuf);
@@ -172,20 +234,21 @@ public class RBH {
 		return busy;
 	}
 	
+	/** Texture and blend calls go through {@link GLStateCache}, which only skips redundant ones in lazy mode */
 	public void enableTexture(int tex) {
 		if(!useTexture) {
-			GL11.glEnable(GL11.GL_TEXTURE_2D);
+			GLStateCache.INSTANCE.enable(GL11.GL_TEXTURE_2D);
 			useTexture = true;
 		}
 		currTex = tex;
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, currTex);
+		GLStateCache.INSTANCE.bindTexture(currTex);
 	}
 	
 	public void disableTexture() {
 		currTex = 0;
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+		GLStateCache.INSTANCE.bindTexture(0);
 		if(useTexture) {
-			GL11.glDisable(GL11.GL_TEXTURE_2D);
+			GLStateCache.INSTANCE.disable(GL11.GL_TEXTURE_2D);
 			useTexture = false;
 		}
 	}
@@ -198,23 +261,23 @@ public class RBH {
 	public void enableBlending() {
 		if(!blending) {
 			blending = true;
-			GL11.glEnable(GL11.GL_BLEND);
+			GLStateCache.INSTANCE.enable(GL11.GL_BLEND);
 		}
-		GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+		GLStateCache.INSTANCE.blendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
 	}
 	
 	public void enableBlending(int gl_sfactor, int gl_dfactor) {
 		if(!blending) {
 			blending = true;
-			GL11.glEnable(GL11.GL_BLEND);
+			GLStateCache.INSTANCE.enable(GL11.GL_BLEND);
 		}
-		GL11.glBlendFunc(gl_sfactor, gl_dfactor);
+		GLStateCache.INSTANCE.blendFunc(gl_sfactor, gl_dfactor);
 	}
 	
 	public void disableBlending() {
 		if(blending) {
 			blending = false;
-			GL11.glDisable(GL11.GL_BLEND);
+			GLStateCache.INSTANCE.disable(GL11.GL_BLEND);
 		}
 	}
 	
@@ -369,6 +432,9 @@ public class RBH {
 	}
 	
 	public void writeVertexTCP(float u, float v, int r, int g, int b, int a, float x, float y, float z) {
+		if(streamed && bbuf.remaining() < BUFFER_STRIDE) {
+			spill();
+		}
 		useTexture = true;
 		
 		bbuf.putFloat(u);
@@ -390,6 +456,9 @@ public class RBH {
 	}
 	
 	public void writeVertexCP(int r, int g, int b, int a, float x, float y, float z) {
+		if(streamed && bbuf.remaining() < BUFFER_STRIDE) {
+			spill();
+		}
 		if(skipMode) {
 			bbuf.position(bbuf.position() + 8);
 		} else {
@@ -413,6 +482,9 @@ public class RBH {
 	}
 	
 	public void writeVertexTP(float u, float v, float x, float y, float z) {
+		if(streamed && bbuf.remaining() < BUFFER_STRIDE) {
+			spill();
+		}
 		useTexture = true;
 		
 		bbuf.putFloat(u);
@@ -438,6 +510,9 @@ public class RBH {
 	}
 	
 	public void writeVertexP(float x, float y, float z) {
+		if(streamed && bbuf.remaining() < BUFFER_STRIDE) {
+			spill();
+		}
 		if(skipMode) {
 			bbuf.position(bbuf.position() + 12);
 		} else {
@@ -460,7 +535,11 @@ public class RBH {
 		vertexCount++;
 	}
 	
-	/** Draws vertices in the buffer and disables blending and textures, also resets current texture */
+	/**
+	 * Draws vertices in the buffer and disables blending and textures, also resets current texture.
+	 * The client arrays are disabled and the array buffer unbound afterwards unless the cache is lazy, then
+	 * {@link GLStateCache#restore()} must be called before GL code that doesn't go through it
+	 */
 	public void draw() {
 		if(!busy) {
 			System.err.println("Not drawing!");
@@ -479,34 +558,156 @@ public class RBH {
 		}
 		
 		vertexRenderCount = vertexCount;
-		if(useTexture) {
-			bbuf.position(0);
-			GL11.glTexCoordPointer(2, GL11.GL_FLOAT, BUFFER_STRIDE, bbuf);
-			GL11.glEnableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+		if(streamed) {
+			drawStreamed(bbuf.position(), drawMode, vertexRenderOffset, vertexRenderCount, useTexture);
+		} else {
+			drawArrays(bbuf, drawMode, vertexRenderOffset, vertexRenderCount, useTexture);
+		}
+		
+		afterOper();
+		busy = false;
+	}
+	
+	/**
+	 * Draws a batch built on any thread with its texture and blending, then disables blending and textures.
+	 * The batch stays valid. Goes through the streaming ring if one is set and the batch fits into the space left in its segment
+	 */
+	public void draw(VertexBatch batch) {
+		if(busy) {
+			System.err.println("RBH is currently busy!");
+			return;
+		}
+		if(batch.getVertexCount() < 1) {
+			return;
 		}
 		
-		bbuf.position(8);
-		GL11.glColorPointer(4, true, BUFFER_STRIDE, bbuf);
-		GL11.glEnableClientState(GL11.GL_COLOR_ARRAY);
+		if(batch.getTexture() != 0) {
+			enableTexture(batch.getTexture());
+		}
+		if(batch.isBlending()) {
+			enableBlending(batch.getBlendSrc(), batch.getBlendDst());
+		}
+		
+		drawVertices(batch.getData(), batch.getDrawMode(), batch.getVertexCount(), batch.isTextured());
+		afterOper();
+	}
+	
+	/** Queues a batch to be drawn by the next drawSubmitted(), can be called from any thread */
+	public void submit(VertexBatch batch) {
+		submitted.add(batch);
+	}
+	
+	/** Draws and releases the submitted batches in the order they were submitted, returns the number drawn */
+	public int drawSubmitted() {
+		if(busy) {
+			System.err.println("RBH is currently busy!");
+			return 0;
+		}
 		
-		bbuf.position(12);
-		GL11.glVertexPointer(3, GL11.GL_FLOAT, BUFFER_STRIDE, bbuf);
-		GL11.glEnableClientState(GL11.GL_VERTEX_ARRAY);
+		int ret = 0;
+		VertexBatch batch;
+		while((batch = submitted.poll()) != null) {
+			draw(batch);
+			batch.release();
+			ret++;
+		}
+		return ret;
+	}
+	
+	public VertexBuffer upload(VertexBatch batch) {
+		return upload(batch, GL15.GL_STATIC_DRAW);
+	}
+	
+	/** Uploads a batch into a vertex buffer object, the batch stays valid */
+	public VertexBuffer upload(VertexBatch batch, int usage) {
+		return new VertexBuffer(batch.getDrawMode(), usage, batch.getData(), batch.getVertexCount(), batch.isTextured(), batch.getTexture());
+	}
+	
+	/** Draws count vertices from index 0 of data with the current texture and blend state, through the ring if they fit into its segment */
+	void drawVertices(ByteBuffer data, int mode, int count, boolean texCoords) {
+		if(canStream() && data.remaining() <= ring.remaining()) {
+			ByteBuffer space = ring.allocate();
+			space.put(data);
+			drawStreamed(space.position(), mode, 0, count, texCoords);
+		} else {
+			drawArrays(data, mode, 0, count, texCoords);
+		}
+	}
+	
+	/** Draws from the space last allocated in the ring, len bytes having been written into it */
+	private void drawStreamed(int len, int mode, int first, int count, boolean texCoords) {
+		VertexBuffer.enablePointers(ring.commit(len), texCoords);
+		GL11.glDrawArrays(mode, first, count);
+		GLStateCache.INSTANCE.finish();
+	}
+	
+	/** Draws from client-side arrays starting at index 0 of the buffer */
+	private static void drawArrays(ByteBuffer buf, int mode, int first, int count, boolean texCoords) {
+		GLStateCache.INSTANCE.bindArrayBuffer(0);
+		if(texCoords) {
+			buf.position(0);
+			GL11.glTexCoordPointer(2, GL11.GL_FLOAT, BUFFER_STRIDE, buf);
+			GLStateCache.INSTANCE.enableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+		} else {
+			GLStateCache.INSTANCE.disableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+		}
 		
-		GL11.glDrawArrays(drawMode, vertexRenderOffset, vertexRenderCount);
+		buf.position(8);
+		GL11.glColorPointer(4, true, BUFFER_STRIDE, buf);
+		GLStateCache.INSTANCE.enableClientState(GL11.GL_COLOR_ARRAY);
 		
-		GL11.glDisableClientState(GL11.GL_VERTEX_ARRAY);
+		buf.position(12);
+		GL11.glVertexPointer(3, GL11.GL_FLOAT, BUFFER_STRIDE, buf);
+		GLStateCache.INSTANCE.enableClientState(GL11.GL_VERTEX_ARRAY);
 		
-		GL11.glDisableClientState(GL11.GL_COLOR_ARRAY);
+		GL11.glDrawArrays(mode, first, count);
+		GLStateCache.INSTANCE.finish();
+	}
+	
+	/** Uploads the vertices into a vertex buffer object to be redrawn without resending them, see {@link VertexBuffer} */
+	public VertexBuffer upload() {
+		return upload(GL15.GL_STATIC_DRAW);
+	}
+	
+	/** Like upload() with the given GL15 usage hint, GL_DYNAMIC_DRAW for vertices that are updated often */
+	public VertexBuffer upload(int usage) {
+		if(!checkRetained()) {
+			return null;
+		}
 		
-		if(useTexture) {
-			GL11.glDisableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+		VertexBuffer ret = new VertexBuffer(drawMode, usage, vertexData(), vertexCount, useTexture, currTex);
+		afterOper();
+		busy = false;
+		return ret;
+	}
+	
+	/** Replaces the vertices of an uploaded buffer with the ones in this buffer, reusing its storage if they fit */
+	public void update(VertexBuffer buffer) {
+		if(!checkRetained()) {
+			return;
 		}
 		
+		buffer.update(vertexData(), vertexCount, useTexture, currTex);
 		afterOper();
 		busy = false;
 	}
 	
+	private boolean checkRetained() {
+		if(!busy || drawMode == -1) {
+			busy = false;
+			System.err.println("Invalid drawMode or was not drawing!");
+			return false;
+		}
+		return true;
+	}
+	
+	/** The written vertices without moving the buffer position */
+	private ByteBuffer vertexData() {
+		ByteBuffer ret = bbuf.duplicate();
+		ret.flip();
+		return ret;
+	}
+	
 	public void writeByte(byte b) {
 		bbuf.put(b);
 	}
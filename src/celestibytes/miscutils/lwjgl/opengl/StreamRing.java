@@ -0,0 +1,262 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+
+package celestibytes.miscutils.lwjgl.opengl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GL44;
+import org.lwjgl.opengl.GLContext;
+import org.lwjgl.opengl.GLSync;
+
+import celestibytes.miscutils.util.BufferPool;
+
+/**
+ * Ring of streaming vertex buffer segments in one buffer object, one segment per frame. Draws between
+ * {@link #beginFrame()} and {@link #endFrame()} are sub-allocated one after another in the frame's segment.
+ * With OpenGL 4.4 the buffer is persistently mapped and vertices are written straight into the segment: the segment
+ * is fenced once at the end of the frame and beginFrame() only waits if the GPU is still behind by all the other
+ * segments. Without it the vertices are written into client memory and copied by {@link #commit(int)} into a buffer
+ * orphaned at the start of each frame, letting the driver rename the storage instead of stalling.
+ * Must be used on the thread owning the GL context.
+ */
+public class StreamRing {
+	public static final int DEFAULT_SEGMENTS = 3;
+	/** Draws start at multiples of this within a segment */
+	public static final int ALIGNMENT = 16;
+	/** Longest single wait for a fence before checking again, in nanoseconds */
+	private static final long WAIT_TIMEOUT = 1000000000L;
+	
+	private final int segmentSize;
+	private final int segments;
+	private final boolean persistent;
+	private int id;
+	private final ByteBuffer[] views;
+	private final GLSync[] fences;
+	private ByteBuffer staging;
+	private int current = -1;
+	/** Start of the free space in the current segment, -1 outside of a frame */
+	private int used = -1;
+	private long stalls = 0;
+	private long stallNanos = 0;
+	
+	/** Persistently mapped if the context supports OpenGL 4.4 */
+	public StreamRing(int segmentSize, int segments) {
+		this(segmentSize, segments, GLContext.getCapabilities().OpenGL44);
+	}
+	
+	public StreamRing(int segmentSize, int segments, boolean persistent) {
+		if(segmentSize <= 0) {
+			throw new IllegalArgumentException("Segment size must be positive");
+		}
+		if(segments < 2) {
+			throw new IllegalArgumentException("Ring must have at least 2 segments");
+		}
+		if((long) segmentSize * segments > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Ring larger than " + Integer.MAX_VALUE + " bytes");
+		}
+		
+		this.segmentSize = segmentSize;
+		this.segments = segments;
+		this.persistent = persistent;
+		views = new ByteBuffer[segments];
+		fences = new GLSync[segments];
+		
+		id = GL15.glGenBuffers();
+		GLStateCache.INSTANCE.bindArrayBuffer(id);
+		if(persistent) {
+			long size = (long) segmentSize * segments;
+			int flags = GL30.GL_MAP_WRITE_BIT | GL44.GL_MAP_PERSISTENT_BIT | GL44.GL_MAP_COHERENT_BIT;
+			GL44.glBufferStorage(GL15.GL_ARRAY_BUFFER, size, flags);
+			ByteBuffer mapped = GL30.glMapBufferRange(GL15.GL_ARRAY_BUFFER, 0, size, flags, null).order(ByteOrder.nativeOrder());
+			for(int i = 0; i < segments; i++) {
+				mapped.limit((i + 1) * segmentSize);
+				mapped.position(i * segmentSize);
+				views[i] = mapped.slice().order(ByteOrder.nativeOrder());
+			}
+		} else {
+			GL15.glBufferData(GL15.GL_ARRAY_BUFFER, segmentSize, GL15.GL_STREAM_DRAW);
+			staging = BufferPool.SHARED.direct(segmentSize);
+		}
+		GLStateCache.INSTANCE.finish();
+	}
+	
+	/** Moves to the next segment for the draws of a frame, waiting for the GPU to finish reading it */
+	public void beginFrame() {
+		check();
+		if(used >= 0) {
+			throw new IllegalStateException("Frame already begun");
+		}
+		
+		current = (current + 1) % segments;
+		used = 0;
+		if(!persistent) {
+			GLStateCache.INSTANCE.bindArrayBuffer(id);
+			GL15.glBufferData(GL15.GL_ARRAY_BUFFER, segmentSize, GL15.GL_STREAM_DRAW);
+			GLStateCache.INSTANCE.finish();
+			return;
+		}
+		
+		GLSync fence = fences[current];
+		if(fence != null) {
+			fences[current] = null;
+			int status = GL32.glClientWaitSync(fence, 0, 0);
+			if(status == GL32.GL_TIMEOUT_EXPIRED) {
+				long start = System.nanoTime();
+				do {
+					status = GL32.glClientWaitSync(fence, GL32.GL_SYNC_FLUSH_COMMANDS_BIT, WAIT_TIMEOUT);
+				} while(status == GL32.GL_TIMEOUT_EXPIRED);
+				stalls++;
+				stallNanos += System.nanoTime() - start;
+			}
+			GL32.glDeleteSync(fence);
+			if(status == GL32.GL_WAIT_FAILED) {
+				throw new IllegalStateException("Waiting for a stream fence failed");
+			}
+		}
+	}
+	
+	/** Fences the segment after the draws of the frame have been issued */
+	public void endFrame() {
+		checkFrame();
+		used = -1;
+		if(persistent) {
+			fences[current] = GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+		}
+	}
+	
+	/** Bytes left in the segment of the current frame */
+	public int remaining() {
+		checkFrame();
+		return segmentSize - used;
+	}
+	
+	/**
+	 * The free space of the segment for the next draw, to be written from index 0 and passed to {@link #commit(int)}.
+	 * Empty once the segment is full, callers draw from client memory instead of overflowing it
+	 */
+	public ByteBuffer allocate() {
+		checkFrame();
+		ByteBuffer ret = persistent ? views[current].duplicate() : staging.duplicate();
+		ret.limit(segmentSize);
+		ret.position(used);
+		return ret.slice().order(ByteOrder.nativeOrder());
+	}
+	
+	/**
+	 * Binds the buffer object to GL_ARRAY_BUFFER with the first len bytes of the last allocated space in it and
+	 * moves past them, returns the offset of the space in the buffer for the array pointers
+	 */
+	public long commit(int len) {
+		checkFrame();
+		if(len < 0 || len > segmentSize - used) {
+			throw new IllegalArgumentException("Committing " + len + " bytes of " + (segmentSize - used));
+		}
+		
+		GLStateCache.INSTANCE.bindArrayBuffer(id);
+		long ret;
+		if(persistent) {
+			ret = (long) current * segmentSize + used;
+		} else {
+			ByteBuffer data = staging.duplicate();
+			data.limit(used + len);
+			data.position(used);
+			GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, used, data);
+			ret = used;
+		}
+		used = Math.min(segmentSize, (used + len + ALIGNMENT - 1) & -ALIGNMENT);
+		return ret;
+	}
+	
+	/** Frees the buffer object and the fences, the ring can't be used afterwards */
+	public void delete() {
+		if(id == 0) {
+			return;
+		}
+		
+		for(int i = 0; i < segments; i++) {
+			if(fences[i] != null) {
+				GL32.glDeleteSync(fences[i]);
+				fences[i] = null;
+			}
+			views[i] = null;
+		}
+		if(persistent) {
+			GLStateCache.INSTANCE.bindArrayBuffer(id);
+			GL15.glUnmapBuffer(GL15.GL_ARRAY_BUFFER);
+		} else {
+			BufferPool.SHARED.release(staging);
+			staging = null;
+		}
+		GL15.glDeleteBuffers(id);
+		GLStateCache.INSTANCE.bufferDeleted(id);
+		id = 0;
+		used = -1;
+	}
+	
+	public boolean isPersistent() {
+		return persistent;
+	}
+	
+	/** Whether beginFrame() has been called without endFrame() */
+	public boolean inFrame() {
+		return used >= 0;
+	}
+	
+	public int getSegmentSize() {
+		return segmentSize;
+	}
+	
+	public int getSegments() {
+		return segments;
+	}
+	
+	/** Number of times beginFrame() had to wait for the GPU */
+	public long getStalls() {
+		return stalls;
+	}
+	
+	public long getStallNanos() {
+		return stallNanos;
+	}
+	
+	private void check() {
+		if(id == 0) {
+			throw new IllegalStateException("Stream ring has been deleted");
+		}
+	}
+	
+	private void checkFrame() {
+		check();
+		if(used < 0) {
+			throw new IllegalStateException("No frame begun");
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+
+package celestibytes.miscutils.lwjgl.opengl;
+
+import java.nio.ByteBuffer;
+
+import celestibytes.miscutils.util.BufferPool;
+
+/**
+ * Finished vertices in the RBH buffer format with the state to draw them with, made by {@link VertexBuilder}
+ * on any thread and drawn on the render thread with {@link RBH#draw(VertexBatch)} or {@link RBH#submit(VertexBatch)}.
+ * The buffer comes from the shared pool and is returned by {@link #release()}.
+ */
+public class VertexBatch {
+	private ByteBuffer data;
+	private final int drawMode;
+	private final int vertexCount;
+	private final boolean useTexture;
+	private final int texture;
+	private final boolean blending;
+	private final int blendSrc;
+	private final int blendDst;
+	
+	VertexBatch(ByteBuffer data, int drawMode, int vertexCount, boolean useTexture, int texture, boolean blending, int blendSrc, int blendDst) {
+		this.data = data;
+		this.drawMode = drawMode;
+		this.vertexCount = vertexCount;
+		this.useTexture = useTexture;
+		this.texture = texture;
+		this.blending = blending;
+		this.blendSrc = blendSrc;
+		this.blendDst = blendDst;
+	}
+	
+	/** The vertices from position 0 to the limit, the returned buffer can be moved freely */
+	public ByteBuffer getData() {
+		if(data == null) {
+			throw new IllegalStateException("Vertex batch has been released");
+		}
+		return data.duplicate();
+	}
+	
+	public int getByteSize() {
+		return vertexCount * RBH.BUFFER_STRIDE;
+	}
+	
+	public int getDrawMode() {
+		return drawMode;
+	}
+	
+	public int getVertexCount() {
+		return vertexCount;
+	}
+	
+	/** Whether the texture coordinates are used */
+	public boolean isTextured() {
+		return useTexture;
+	}
+	
+	/** Texture bound when drawing, 0 for none */
+	public int getTexture() {
+		return texture;
+	}
+	
+	public boolean isBlending() {
+		return blending;
+	}
+	
+	public int getBlendSrc() {
+		return blendSrc;
+	}
+	
+	public int getBlendDst() {
+		return blendDst;
+	}
+	
+	/** Returns the buffer to the pool, the batch can't be drawn afterwards */
+	public void release() {
+		if(data != null) {
+			BufferPool.SHARED.release(data);
+			data = null;
+		}
+	}
+	
+	public boolean isReleased() {
+		return data == null;
+	}
+}
@@ -0,0 +1,172 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+
+package celestibytes.miscutils.lwjgl.opengl;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+
+/**
+ * Vertices in the RBH buffer format uploaded once into a vertex buffer object, created with {@link RBH#upload()}.
+ * Drawing only binds the buffer and sets the pointers, nothing is sent to the GPU again until the data is updated.
+ * Must be used on the thread owning the GL context and deleted once it isn't needed.
+ */
+public class VertexBuffer {
+	private int id;
+	private final int drawMode;
+	private final int usage;
+	private int vertexCount;
+	private int capacity;
+	private boolean useTexture;
+	private int texture;
+	
+	VertexBuffer(int drawMode, int usage, ByteBuffer data, int vertexCount, boolean useTexture, int texture) {
+		this.drawMode = drawMode;
+		this.usage = usage;
+		id = GL15.glGenBuffers();
+		update(data, vertexCount, useTexture, texture);
+	}
+	
+	/** Replaces the vertices, the buffer is reused if they fit and reallocated otherwise */
+	void update(ByteBuffer data, int vertexCount, boolean useTexture, int texture) {
+		if(id == 0) {
+			throw new IllegalStateException("Vertex buffer has been deleted");
+		}
+		
+		GLStateCache.INSTANCE.bindArrayBuffer(id);
+		if(data.remaining() > capacity) {
+			capacity = data.remaining();
+			GL15.glBufferData(GL15.GL_ARRAY_BUFFER, data, usage);
+		} else {
+			GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, 0, data);
+		}
+		
+		GLStateCache.INSTANCE.finish();
+		
+		this.vertexCount = vertexCount;
+		this.useTexture = useTexture;
+		this.texture = texture;
+	}
+	
+	/** Overwrites vertices from the given vertex index on with data in the RBH buffer format, which must fit */
+	public void update(int vertexIndex, ByteBuffer data) {
+		if(id == 0) {
+			throw new IllegalStateException("Vertex buffer has been deleted");
+		}
+		long offset = (long) vertexIndex * RBH.BUFFER_STRIDE;
+		if(vertexIndex < 0 || offset + data.remaining() > (long) vertexCount * RBH.BUFFER_STRIDE) {
+			throw new IndexOutOfBoundsException("Vertices " + vertexIndex + "+" + data.remaining() / RBH.BUFFER_STRIDE + " are outside the " + vertexCount + " in the buffer");
+		}
+		
+		GLStateCache.INSTANCE.bindArrayBuffer(id);
+		GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, offset, data);
+		GLStateCache.INSTANCE.finish();
+	}
+	
+	public void draw() {
+		draw(0, vertexCount);
+	}
+	
+	/** Draws count vertices starting from first with the texture that was bound when uploading */
+	public void draw(int first, int count) {
+		if(id == 0) {
+			throw new IllegalStateException("Vertex buffer has been deleted");
+		}
+		if(count < 1) {
+			return;
+		}
+		
+		if(texture != 0) {
+			GLStateCache.INSTANCE.enable(GL11.GL_TEXTURE_2D);
+			GLStateCache.INSTANCE.bindTexture(texture);
+		}
+		GLStateCache.INSTANCE.bindArrayBuffer(id);
+		enablePointers(0, useTexture);
+		GL11.glDrawArrays(drawMode, first, count);
+		GLStateCache.INSTANCE.finish();
+		if(texture != 0) {
+			GLStateCache.INSTANCE.bindTexture(0);
+			GLStateCache.INSTANCE.disable(GL11.GL_TEXTURE_2D);
+		}
+	}
+	
+	/** Frees the buffer object, the handle can't be used afterwards */
+	public void delete() {
+		if(id != 0) {
+			GL15.glDeleteBuffers(id);
+			GLStateCache.INSTANCE.bufferDeleted(id);
+			id = 0;
+			vertexCount = 0;
+			capacity = 0;
+		}
+	}
+	
+	public boolean isDeleted() {
+		return id == 0;
+	}
+	
+	/** Name of the buffer object, 0 once deleted */
+	public int getId() {
+		return id;
+	}
+	
+	public int getDrawMode() {
+		return drawMode;
+	}
+	
+	public int getVertexCount() {
+		return vertexCount;
+	}
+	
+	/**
+	 * Sets and enables the vertex array pointers for RBH format vertices starting at the given byte offset
+	 * of the bound GL_ARRAY_BUFFER. The arrays stay enabled, {@link #disablePointers(boolean)} disables them.
+	 */
+	public static void enablePointers(long offset, boolean useTexture) {
+		if(useTexture) {
+			GL11.glTexCoordPointer(2, GL11.GL_FLOAT, RBH.BUFFER_STRIDE, offset);
+			GLStateCache.INSTANCE.enableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+		} else {
+			GLStateCache.INSTANCE.disableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+		}
+		
+		GL11.glColorPointer(4, GL11.GL_UNSIGNED_BYTE, RBH.BUFFER_STRIDE, offset + 8);
+		GLStateCache.INSTANCE.enableClientState(GL11.GL_COLOR_ARRAY);
+		
+		GL11.glVertexPointer(3, GL11.GL_FLOAT, RBH.BUFFER_STRIDE, offset + 12);
+		GLStateCache.INSTANCE.enableClientState(GL11.GL_VERTEX_ARRAY);
+	}
+	
+	public static void disablePointers(boolean useTexture) {
+		GLStateCache.INSTANCE.disableClientState(GL11.GL_VERTEX_ARRAY);
+		GLStateCache.INSTANCE.disableClientState(GL11.GL_COLOR_ARRAY);
+		if(useTexture) {
+			GLStateCache.INSTANCE.disableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+		}
+	}
+}
@@ -0,0 +1,243 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+
+package celestibytes.miscutils.lwjgl.opengl;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.opengl.GL11;
+
+import celestibytes.miscutils.util.BufferPool;
+
+/**
+ * Builds vertices in the RBH buffer format without touching GL, so each worker thread can fill its own builder
+ * in parallel. {@link #build()} hands the vertices over as a {@link VertexBatch} for the render thread and leaves
+ * the builder ready for the next batch. A builder must only be used by one thread at a time.
+ */
+public class VertexBuilder {
+	public static final int DEFAULT_INITIAL_SIZE = 1 << 16;
+	
+	/** Size of the next buffer, grown to fit the largest batch so far */
+	private int size;
+	private ByteBuffer bbuf;
+	private int drawMode = -1;
+	private int vertexCount = 0;
+	private boolean useTexture = false;
+	private int texture = 0;
+	private boolean blending = false;
+	private int blendSrc = GL11.GL_SRC_ALPHA, blendDst = GL11.GL_ONE_MINUS_SRC_ALPHA;
+	
+	private byte currRed = (byte)0xFF, currGreen = (byte)0xFF, currBlue = (byte)0xFF, currAlpha = (byte)0xFF;
+	private float translX = 0f, translY = 0f, translZ = 0f;
+	
+	public VertexBuilder() {
+		this(DEFAULT_INITIAL_SIZE);
+	}
+	
+	/** The buffer starts at initialSize bytes and doubles when full, later batches start at the largest size reached */
+	public VertexBuilder(int initialSize) {
+		size = Math.max(initialSize, RBH.BUFFER_STRIDE);
+	}
+	
+	public void startDrawingTriangles() {
+		startDrawing(GL11.GL_TRIANGLES);
+	}
+	
+	public void startDrawingQuads() {
+		startDrawing(GL11.GL_QUADS);
+	}
+	
+	/** Starts a new batch, dropping anything written since the last build */
+	public void startDrawing(int drawMode) {
+		if(bbuf == null) {
+			bbuf = BufferPool.SHARED.direct(size);
+		}
+		bbuf.clear();
+		
+		this.drawMode = drawMode;
+		vertexCount = 0;
+		useTexture = false;
+		texture = 0;
+		blending = false;
+		blendSrc = GL11.GL_SRC_ALPHA;
+		blendDst = GL11.GL_ONE_MINUS_SRC_ALPHA;
+		
+		currRed = (byte)0xFF;
+		currGreen = (byte)0xFF;
+		currBlue = (byte)0xFF;
+		currAlpha = (byte)0xFF;
+		
+		translX = 0f;
+		translY = 0f;
+		translZ = 0f;
+	}
+	
+	/** Hands the vertices written since startDrawing over, the builder can start the next batch right away */
+	public VertexBatch build() {
+		if(drawMode == -1) {
+			throw new IllegalStateException("Not drawing");
+		}
+		
+		bbuf.flip();
+		VertexBatch ret = new VertexBatch(bbuf, drawMode, vertexCount, useTexture, texture, blending, blendSrc, blendDst);
+		bbuf = null;
+		drawMode = -1;
+		return ret;
+	}
+	
+	/** Returns the buffer to the pool, the builder gets a new one if it is used again */
+	public void release() {
+		if(bbuf != null) {
+			BufferPool.SHARED.release(bbuf);
+			bbuf = null;
+		}
+		drawMode = -1;
+	}
+	
+	public boolean isDrawing() {
+		return drawMode != -1;
+	}
+	
+	public int getVertexCount() {
+		return vertexCount;
+	}
+	
+	/** Texture to bind when the batch is drawn */
+	public void setTexture(int tex) {
+		texture = tex;
+	}
+	
+	/** Enables blending with the default blend mode when the batch is drawn */
+	public void enableBlending() {
+		enableBlending(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+	}
+	
+	public void enableBlending(int gl_sfactor, int gl_dfactor) {
+		blending = true;
+		blendSrc = gl_sfactor;
+		blendDst = gl_dfactor;
+	}
+	
+	public void disableBlending() {
+		blending = false;
+	}
+	
+	public void setColorRBGA(int color) {
+		currRed = (byte)((color & 0xFF000000) >> 24);
+		currGreen = (byte)((color & 0xFF0000) >> 16);
+		currBlue = (byte)((color & 0xFF00) >> 8);
+		currAlpha = (byte)(color & 0xFF);
+	}
+	
+	public void setColor(float r, float g, float b, float a) {
+		currRed = (byte)(int)(0xFF * r);
+		currGreen = (byte)(int)(0xFF * g);
+		currBlue = (byte)(int)(0xFF * b);
+		currAlpha = (byte)(int)(0xFF * a);
+	}
+	
+	public void setTranslation(float x, float y, float z) {
+		translX = x;
+		translY = y;
+		translZ = z;
+	}
+	
+	public void addTranslation(float x, float y, float z) {
+		translX += x;
+		translY += y;
+		translZ += z;
+	}
+	
+	public void writeVertexTCP(float u, float v, int r, int g, int b, int a, float x, float y, float z) {
+		ensure();
+		useTexture = true;
+		bbuf.putFloat(u);
+		bbuf.putFloat(v);
+		bbuf.put((byte)(r & 0xFF));
+		bbuf.put((byte)(g & 0xFF));
+		bbuf.put((byte)(b & 0xFF));
+		bbuf.put((byte)(a & 0xFF));
+		position(x, y, z);
+	}
+	
+	public void writeVertexCP(int r, int g, int b, int a, float x, float y, float z) {
+		ensure();
+		bbuf.putLong(0L);
+		bbuf.put((byte)(r & 0xFF));
+		bbuf.put((byte)(g & 0xFF));
+		bbuf.put((byte)(b & 0xFF));
+		bbuf.put((byte)(a & 0xFF));
+		position(x, y, z);
+	}
+	
+	public void writeVertexTP(float u, float v, float x, float y, float z) {
+		ensure();
+		useTexture = true;
+		bbuf.putFloat(u);
+		bbuf.putFloat(v);
+		color();
+		position(x, y, z);
+	}
+	
+	public void writeVertexP(float x, float y, float z) {
+		ensure();
+		bbuf.putLong(0L);
+		color();
+		position(x, y, z);
+	}
+	
+	/** Makes room for one more vertex */
+	private void ensure() {
+		if(drawMode == -1) {
+			throw new IllegalStateException("Not drawing");
+		}
+		if(bbuf.remaining() < RBH.BUFFER_STRIDE) {
+			ByteBuffer grown = BufferPool.SHARED.direct(bbuf.capacity() * 2);
+			bbuf.flip();
+			grown.put(bbuf);
+			BufferPool.SHARED.release(bbuf);
+			bbuf = grown;
+			size = grown.capacity();
+		}
+	}
+	
+	private void color() {
+		bbuf.put(currRed);
+		bbuf.put(currGreen);
+		bbuf.put(currBlue);
+		bbuf.put(currAlpha);
+	}
+	
+	/** Writes the translated position and zero normals, completing the vertex */
+	private void position(float x, float y, float z) {
+		bbuf.putFloat(x + translX);
+		bbuf.putFloat(y + translY);
+		bbuf.putFloat(z + translZ);
+		bbuf.putInt(0);
+		bbuf.putLong(0L);
+		vertexCount++;
+	}
+}
@@ -0,0 +1,263 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.AsynchronousByteChannel;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Reads values written with the Bytes.wt* methods from an asynchronous file or socket channel without blocking a thread
+ * while waiting for data, so that many streams can be read with a small pool. Each value is buffered whole and handed
+ * out as an in-place {@link TypedReader}. Only one operation may be pending at a time, futures are completed on the
+ * thread of the channel unless the value was already buffered.
+ */
+public class AsyncReader implements Closeable {
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+	
+	private final AsynchronousFileChannel file;
+	private final AsynchronousByteChannel ch;
+	private final TypedReader view = new TypedReader(ByteBuffer.allocate(0));
+	private long filePosition;
+	private ByteBuffer buf;
+	/** Limit of the buffered data while buf is limited to the current value */
+	private int limit = 0;
+	private boolean eof = false;
+	
+	public AsyncReader(AsynchronousFileChannel file) {
+		this(file, 0, DEFAULT_BUFFER_SIZE);
+	}
+	
+	/** Reads the file from the given position, values larger than the buffer grow it */
+	public AsyncReader(AsynchronousFileChannel file, long position, int bufferSize) {
+		this.file = file;
+		this.ch = null;
+		filePosition = position;
+		buf = buffer(bufferSize);
+	}
+	
+	public AsyncReader(AsynchronousByteChannel ch) {
+		this(ch, DEFAULT_BUFFER_SIZE);
+	}
+	
+	/** Values larger than the buffer grow it */
+	public AsyncReader(AsynchronousByteChannel ch, int bufferSize) {
+		this.file = null;
+		this.ch = ch;
+		buf = buffer(bufferSize);
+	}
+	
+	/**
+	 * Completes with a reader limited to the next value, or null at the end of the stream. The reader is valid
+	 * until the next call, the value is skipped if it isn't read.
+	 */
+	public CompletableFuture<TypedReader> next() {
+		buf.position(buf.limit()).limit(limit);
+		CompletableFuture<TypedReader> ret = new CompletableFuture<TypedReader>();
+		next(ret);
+		return ret;
+	}
+	
+	/**
+	 * Calls the handler with every remaining value, completes with the number of values at the end of the stream.
+	 * Buffered values are handled in a loop, so this is the cheapest way to consume a whole stream.
+	 */
+	public CompletableFuture<Long> forEach(Handler handler) {
+		buf.position(buf.limit()).limit(limit);
+		CompletableFuture<Long> ret = new CompletableFuture<Long>();
+		each(handler, ret, 0);
+		return ret;
+	}
+	
+	/** Completes with the next value as by {@link TypedReader#readValue()}, or null at the end of the stream */
+	public CompletableFuture<Object> readValue() {
+		return next().thenApply((r) -> {
+			try {
+				return r == null ? null : r.readValue();
+			} catch(IOException e) {
+				throw new CompletionException(e);
+			}
+		});
+	}
+	
+	/** Completes with the next value as by {@link Bytes#read(java.io.InputStream)}, or null at the end of the stream */
+	public CompletableFuture<byte[]> read() {
+		return next().thenApply((r) -> {
+			if(r == null) {
+				return null;
+			}
+			byte[] value = new byte[buf.remaining()];
+			buf.get(value);
+			try {
+				return Bytes.read(new ByteArrayInputStream(value));
+			} catch(IOException e) {
+				throw new CompletionException(e);
+			}
+		});
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if(file != null) {
+			file.close();
+		} else {
+			ch.close();
+		}
+	}
+	
+	/** Completes the future once a whole value is buffered, reading more as needed */
+	private void next(CompletableFuture<TypedReader> f) {
+		try {
+			switch(ready()) {
+			case 1:
+				f.complete(view);
+				break;
+			case -1:
+				f.complete(null);
+				break;
+			default:
+				fill(() -> next(f), f);
+			}
+		} catch(IOException e) {
+			f.completeExceptionally(e);
+		}
+	}
+	
+	/** Passes every buffered value to the handler in a loop, only continuing asynchronously when more data is needed */
+	private void each(Handler handler, CompletableFuture<Long> f, long count) {
+		try {
+			while(true) {
+				switch(ready()) {
+				case 1:
+					handler.value(view);
+					count++;
+					buf.position(buf.limit()).limit(limit);
+					break;
+				case -1:
+					f.complete(count);
+					return;
+				default:
+					long n = count;
+					fill(() -> each(handler, f, n), f);
+					return;
+				}
+			}
+		} catch(IOException | RuntimeException e) {
+			f.completeExceptionally(e);
+		}
+	}
+	
+	/** Limits the buffer to the next value if it is buffered whole and returns 1, 0 if more data is needed, -1 at the end */
+	private int ready() throws IOException {
+		int pos = buf.position();
+		if(pos < limit) {
+			int tag = buf.get(pos);
+			if(Bytes.size(tag) < 0 && tag != Bytes.TAG_STRING && tag != Bytes.TAG_UTF8 && tag != Bytes.TAG_ARRAY && !Bytes.varint(tag)) {
+				throw new IOException("Unknown type indicator: " + tag);
+			}
+			if(tag == Bytes.TAG_ARRAY && pos + 1 < limit && Bytes.size(buf.get(pos + 1)) < 1) {
+				throw new IOException("Unknown array type");
+			}
+			
+			int end = Bytes.next(buf, pos);
+			if(end >= 0) {
+				buf.limit(end);
+				view.buf = buf;
+				return 1;
+			}
+		}
+		
+		if(eof) {
+			if(pos < limit) {
+				throw new EOFException("Truncated value");
+			}
+			return -1;
+		}
+		return 0;
+	}
+	
+	/** Reads more data, growing the buffer if it is full, and runs then on the channel thread */
+	private void fill(Runnable then, CompletableFuture<?> f) {
+		if(buf.position() == 0 && limit == buf.capacity()) {
+			ByteBuffer grown = buffer(buf.capacity() * 2);
+			grown.clear();
+			grown.put(buf);
+			buf = grown;
+		} else {
+			buf.compact();
+		}
+		
+		CompletionHandler<Integer, Runnable> handler = new CompletionHandler<Integer, Runnable>() {
+			@Override
+			public void completed(Integer read, Runnable then) {
+				if(read < 0) {
+					eof = true;
+				} else {
+					filePosition += read;
+				}
+				buf.flip();
+				limit = buf.limit();
+				then.run();
+			}
+			
+			@Override
+			public void failed(Throwable e, Runnable then) {
+				buf.flip();
+				limit = buf.limit();
+				f.completeExceptionally(e);
+			}
+		};
+		
+		if(file != null) {
+			file.read(buf, filePosition, then, handler);
+		} else {
+			ch.read(buf, then, handler);
+		}
+	}
+	
+	/** Receives each value of {@link AsyncReader#forEach(Handler)} */
+	public interface Handler {
+		/** The reader is limited to the value and only valid during the call, the value is skipped if it isn't read */
+		public void value(TypedReader r) throws IOException;
+	}
+	
+	private static ByteBuffer buffer(int size) {
+		if(size < 16) {
+			throw new IllegalArgumentException("Buffer size must be at least 16");
+		}
+		ByteBuffer ret = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		ret.limit(0);
+		return ret;
+	}
+}
@@ -0,0 +1,155 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.AsynchronousByteChannel;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Buffers values written with the TypedWriter methods in memory and writes them to an asynchronous file or socket
+ * channel with {@link #flushAsync()}, without blocking a thread while the channel is busy. Writes are queued in order,
+ * values may be written while earlier flushes are still pending. Not thread-safe.
+ */
+public class AsyncWriter extends TypedWriter {
+	private final AsynchronousFileChannel file;
+	private final AsynchronousByteChannel ch;
+	private final int bufferSize;
+	private long filePosition;
+	private CompletableFuture<Void> pending = CompletableFuture.completedFuture(null);
+	
+	public AsyncWriter(AsynchronousFileChannel file) {
+		this(file, 0, DEFAULT_BUFFER_SIZE);
+	}
+	
+	/** Writes the file from the given position, the buffer grows until flushed */
+	public AsyncWriter(AsynchronousFileChannel file, long position, int bufferSize) {
+		super(buffer(bufferSize));
+		this.file = file;
+		this.ch = null;
+		this.bufferSize = bufferSize;
+		filePosition = position;
+	}
+	
+	public AsyncWriter(AsynchronousByteChannel ch) {
+		this(ch, DEFAULT_BUFFER_SIZE);
+	}
+	
+	/** The buffer grows until flushed */
+	public AsyncWriter(AsynchronousByteChannel ch, int bufferSize) {
+		super(buffer(bufferSize));
+		this.file = null;
+		this.ch = ch;
+		this.bufferSize = bufferSize;
+	}
+	
+	/** Queues the buffered values for writing, completes once they and everything queued before have been written */
+	public CompletableFuture<Void> flushAsync() {
+		if(buf.position() > 0) {
+			ByteBuffer data = buf;
+			data.flip();
+			offset += data.remaining();
+			buf = buffer(bufferSize);
+			pending = pending.thenCompose((v) -> write(data));
+		}
+		return pending;
+	}
+	
+	/** Flushes and waits for all queued writes */
+	@Override
+	public void flush() throws IOException {
+		try {
+			flushAsync().join();
+		} catch(CompletionException e) {
+			if(e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw e;
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			if(file != null) {
+				file.close();
+			} else {
+				ch.close();
+			}
+		}
+	}
+	
+	/** Grows the buffer instead of writing, writing only happens on flush */
+	@Override
+	void drain(int n) throws IOException {
+		grow(n, Integer.MAX_VALUE);
+	}
+	
+	/** Writes the whole buffer, continuing from the channel thread after partial writes */
+	private CompletableFuture<Void> write(ByteBuffer data) {
+		CompletableFuture<Void> ret = new CompletableFuture<Void>();
+		CompletionHandler<Integer, ByteBuffer> handler = new CompletionHandler<Integer, ByteBuffer>() {
+			@Override
+			public void completed(Integer written, ByteBuffer data) {
+				filePosition += written;
+				if(data.hasRemaining()) {
+					start(data, this);
+				} else {
+					ret.complete(null);
+				}
+			}
+			
+			@Override
+			public void failed(Throwable e, ByteBuffer data) {
+				ret.completeExceptionally(e);
+			}
+		};
+		start(data, handler);
+		return ret;
+	}
+	
+	private void start(ByteBuffer data, CompletionHandler<Integer, ByteBuffer> handler) {
+		if(file != null) {
+			file.write(data, filePosition, data, handler);
+		} else {
+			ch.write(data, data, handler);
+		}
+	}
+	
+	private static ByteBuffer buffer(int size) {
+		if(size < 16) {
+			throw new IllegalArgumentException("Buffer size must be at least 16");
+		}
+		return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+}
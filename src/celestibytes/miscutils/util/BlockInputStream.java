@@ -0,0 +1,257 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.Checksum;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a stream written with {@link BlockOutputStream}. Blocks are independent so reading can start
+ * at any block offset, see {@link #blocks(FileChannel)}. Checksums of checksummed blocks are verified unless turned off.
+ */
+public class BlockInputStream extends InputStream {
+	private final InputStream in;
+	private final byte[] header = new byte[BlockOutputStream.HEADER_SIZE + BlockOutputStream.CHECKSUM_SIZE];
+	private final Checksum crc = Crc32c.create();
+	private boolean verify = true;
+	private byte[] raw = new byte[0];
+	private byte[] comp = new byte[0];
+	private Inflater inflater;
+	private int pos = 0;
+	private int limit = 0;
+	
+	/** The stream must be positioned at the start of a block */
+	public BlockInputStream(InputStream in) {
+		this.in = in;
+	}
+	
+	/** Offsets of every block from the current position of the channel to its end, only the headers are read */
+	public static long[] blocks(FileChannel fc) throws IOException {
+		ByteBuffer h = ByteBuffer.allocate(BlockOutputStream.HEADER_SIZE);
+		long[] ret = new long[16];
+		int n = 0;
+		long pos = fc.position();
+		long size = fc.size();
+		
+		while(pos < size) {
+			h.clear();
+			while(h.hasRemaining()) {
+				if(fc.read(h, pos + h.position()) < 0) {
+					throw new EOFException("Truncated block header at " + pos);
+				}
+			}
+			if(n == ret.length) {
+				ret = Arrays.copyOf(ret, n * 2);
+			}
+			ret[n++] = pos;
+			pos += headerSize(h.get(0)) + length(h.array(), 5);
+		}
+		return Arrays.copyOf(ret, n);
+	}
+	
+	/** Verifies the checksums of checksummed blocks, on by default. Off skips them without computing anything */
+	public void setVerify(boolean verify) {
+		this.verify = verify;
+	}
+	
+	public boolean getVerify() {
+		return verify;
+	}
+	
+	@Override
+	public int read() throws IOException {
+		if(pos == limit && !block()) {
+			return -1;
+		}
+		return raw[pos++] & 0xFF;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len == 0) {
+			return 0;
+		}
+		if(pos == limit && !block()) {
+			return -1;
+		}
+		int n = Math.min(len, limit - pos);
+		System.arraycopy(raw, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+	
+	@Override
+	public long skip(long n) throws IOException {
+		long ret = 0;
+		while(n > 0 && (pos < limit || block())) {
+			int s = (int) Math.min(n, limit - pos);
+			pos += s;
+			n -= s;
+			ret += s;
+		}
+		return ret;
+	}
+	
+	@Override
+	public int available() {
+		return limit - pos;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		try {
+			in.close();
+		} finally {
+			if(inflater != null) {
+				inflater.end();
+			}
+		}
+	}
+	
+	/** Reads and decompresses the next block, false at the end of the stream */
+	private boolean block() throws IOException {
+		do {
+			int n = 0;
+			while(n < BlockOutputStream.HEADER_SIZE) {
+				int r = in.read(header, n, BlockOutputStream.HEADER_SIZE - n);
+				if(r < 0) {
+					if(n == 0) {
+						return false;
+					}
+					throw new EOFException("Truncated block header");
+				}
+				n += r;
+			}
+			
+			int rawLen = length(header, 1);
+			int compLen = length(header, 5);
+			boolean checked = (header[0] & BlockOutputStream.CHECKSUM) != 0;
+			if(checked) {
+				readFully(header, BlockOutputStream.HEADER_SIZE, BlockOutputStream.CHECKSUM_SIZE);
+			}
+			if(raw.length < rawLen) {
+				raw = new byte[rawLen];
+			}
+			
+			byte codec = (byte) (header[0] & ~BlockOutputStream.CHECKSUM);
+			byte[] payload = raw;
+			if(codec != BlockOutputStream.CODEC_NONE) {
+				if(comp.length < compLen) {
+					comp = new byte[compLen];
+				}
+				payload = comp;
+			} else if(compLen != rawLen) {
+				throw new IOException("Corrupt block header");
+			}
+			
+			readFully(payload, 0, compLen);
+			if(checked && verify) {
+				verify(crc, header, 0, BlockOutputStream.HEADER_SIZE, payload, 0, compLen);
+			}
+			if(codec == BlockOutputStream.CODEC_DEFLATE && inflater == null) {
+				inflater = new Inflater();
+			}
+			if(codec != BlockOutputStream.CODEC_NONE) {
+				decode(codec, comp, 0, compLen, raw, rawLen, inflater);
+			}
+			
+			pos = 0;
+			limit = rawLen;
+		} while(limit == 0);
+		return true;
+	}
+	
+	/** Size of the header of a block with the given codec byte */
+	static int headerSize(byte codec) {
+		return (codec & BlockOutputStream.CHECKSUM) != 0 ? BlockOutputStream.HEADER_SIZE + BlockOutputStream.CHECKSUM_SIZE : BlockOutputStream.HEADER_SIZE;
+	}
+	
+	/** Checks the CRC32C of the header and payload against the little endian one following the header */
+	static void verify(Checksum crc, byte[] h, int hoff, int hlen, byte[] b, int off, int len) throws IOException {
+		crc.reset();
+		crc.update(h, hoff, hlen);
+		crc.update(b, off, len);
+		int s = hoff + hlen;
+		if((int) crc.getValue() != ((h[s] & 0xFF) | (h[s + 1] & 0xFF) << 8 | (h[s + 2] & 0xFF) << 16 | (h[s + 3] & 0xFF) << 24)) {
+			throw new IOException("Block checksum mismatch");
+		}
+	}
+	
+	/** Decompresses a block payload, the inflater is only needed for deflate blocks */
+	static void decode(byte codec, byte[] src, int off, int len, byte[] dst, int rawLen, Inflater inflater) throws IOException {
+		switch(codec) {
+		case BlockOutputStream.CODEC_NONE:
+			if(len != rawLen) {
+				throw new IOException("Corrupt block header");
+			}
+			System.arraycopy(src, off, dst, 0, len);
+			break;
+		case BlockOutputStream.CODEC_LZ4:
+			Lz4.decompress(src, off, len, dst, 0, rawLen);
+			break;
+		case BlockOutputStream.CODEC_DEFLATE:
+			inflater.reset();
+			inflater.setInput(src, off, len);
+			try {
+				if(inflater.inflate(dst, 0, rawLen) != rawLen || !inflater.finished()) {
+					throw new IOException("Corrupt deflate block");
+				}
+			} catch(DataFormatException e) {
+				throw new IOException("Corrupt deflate block", e);
+			}
+			break;
+		default:
+			throw new IOException("Unknown codec " + codec);
+		}
+	}
+	
+	/** Little endian block length at off, validated against the maximum block size */
+	static int length(byte[] b, int off) throws IOException {
+		int ret = (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8 | (b[off + 2] & 0xFF) << 16 | (b[off + 3] & 0xFF) << 24;
+		if(ret < 0 || ret > Lz4.maxCompressedLength(BlockOutputStream.MAX_BLOCK_SIZE)) {
+			throw new IOException("Corrupt block header");
+		}
+		return ret;
+	}
+	
+	private void readFully(byte[] b, int off, int len) throws IOException {
+		while(len > 0) {
+			int r = in.read(b, off, len);
+			if(r < 0) {
+				throw new EOFException("Truncated block");
+			}
+			off += r;
+			len -= r;
+		}
+	}
+}
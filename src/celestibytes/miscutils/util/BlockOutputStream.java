@@ -0,0 +1,237 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Checksum;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses a stream into independently decompressible blocks, each starting with a header of
+ * [codec byte][raw length int][compressed length int] in little endian. Blocks that don't shrink are stored raw.
+ * With checksums on, the codec byte has the {@link #CHECKSUM} bit set and the header is followed by the CRC32C of the header and
+ * the stored payload, so corrupt lengths are caught as well.
+ * Wrap in a {@link TypedWriter} to write compressed Bytes values, read back with {@link BlockInputStream}.
+ */
+public class BlockOutputStream extends OutputStream {
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+	public static final int MAX_BLOCK_SIZE = 1 << 26;
+	public static final int HEADER_SIZE = 9;
+	public static final int CHECKSUM_SIZE = 4;
+	
+	public static final byte CODEC_NONE = 0;
+	public static final byte CODEC_LZ4 = 1;
+	public static final byte CODEC_DEFLATE = 2;
+	/** Flag bit of the codec byte of checksummed blocks */
+	public static final int CHECKSUM = 0x80;
+	
+	private final OutputStream out;
+	private final byte codec;
+	private final byte[] header = new byte[HEADER_SIZE + CHECKSUM_SIZE];
+	private final int blockSize;
+	private byte[] raw;
+	private byte[] comp;
+	private Lz4 lz4;
+	private Deflater deflater;
+	private Checksum crc;
+	private int count = 0;
+	private long position = 0;
+	
+	public BlockOutputStream(OutputStream out) {
+		this(out, CODEC_LZ4, DEFAULT_BLOCK_SIZE);
+	}
+	
+	public BlockOutputStream(OutputStream out, byte codec) {
+		this(out, codec, DEFAULT_BLOCK_SIZE);
+	}
+	
+	public BlockOutputStream(OutputStream out, byte codec, int blockSize) {
+		if(blockSize < 16 || blockSize > MAX_BLOCK_SIZE) {
+			throw new IllegalArgumentException("Block size must be between 16 and " + MAX_BLOCK_SIZE);
+		}
+		this.out = out;
+		this.codec = codec;
+		this.blockSize = blockSize;
+		switch(codec) {
+		case CODEC_NONE:
+			break;
+		case CODEC_LZ4:
+			lz4 = new Lz4();
+			break;
+		case CODEC_DEFLATE:
+			deflater = new Deflater(Deflater.BEST_SPEED);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown codec " + codec);
+		}
+	}
+	
+	@Override
+	public void write(int b) throws IOException {
+		if(raw == null) {
+			raw = new byte[blockSize];
+		} else if(count == raw.length) {
+			block();
+		}
+		raw[count++] = (byte) b;
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if(raw == null) {
+			raw = new byte[blockSize];
+		}
+		while(len > 0) {
+			if(count == raw.length) {
+				block();
+			}
+			int n = Math.min(len, raw.length - count);
+			System.arraycopy(b, off, raw, count, n);
+			count += n;
+			off += n;
+			len -= n;
+		}
+	}
+	
+	/** Ends the current block so that the next write starts a new one, a reader can start at the returned offset */
+	public long endBlock() throws IOException {
+		block();
+		return position;
+	}
+	
+	/** Adds a CRC32C of each block written from now on, computed over the whole block at once */
+	public void setChecksum(boolean checksum) {
+		crc = checksum ? Crc32c.create() : null;
+	}
+	
+	public boolean getChecksum() {
+		return crc != null;
+	}
+	
+	/** Compressed bytes written so far */
+	public long position() {
+		return position;
+	}
+	
+	/** Ends the current block and flushes the underlying stream */
+	@Override
+	public void flush() throws IOException {
+		block();
+		out.flush();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		try {
+			block();
+			out.close();
+		} finally {
+			if(deflater != null) {
+				deflater.end();
+			}
+		}
+	}
+	
+	private void block() throws IOException {
+		if(count > 0) {
+			block(raw, 0, count);
+			count = 0;
+		}
+	}
+	
+	/** Compresses and writes len bytes as a single block, which may be larger than the block size */
+	void block(byte[] src, int off, int len) throws IOException {
+		block(null, src, off, len);
+	}
+	
+	/** Writes prefix, if not null, right before the block and covers it with the block checksum */
+	void block(byte[] prefix, byte[] src, int off, int len) throws IOException {
+		if(len > MAX_BLOCK_SIZE) {
+			throw new IllegalArgumentException("Block larger than " + MAX_BLOCK_SIZE);
+		}
+		
+		int n = -1;
+		if(codec == CODEC_LZ4) {
+			if(comp == null || comp.length < Lz4.maxCompressedLength(len)) {
+				comp = new byte[Lz4.maxCompressedLength(Math.max(len, blockSize))];
+			}
+			n = lz4.compress(src, off, len, comp, 0);
+		} else if(codec == CODEC_DEFLATE) {
+			if(comp == null || comp.length < len) {
+				comp = new byte[Math.max(len, blockSize)];
+			}
+			deflater.reset();
+			deflater.setInput(src, off, len);
+			deflater.finish();
+			n = deflater.deflate(comp, 0, len);
+			if(!deflater.finished()) {
+				n = -1;
+			}
+		}
+		
+		if(n < 0 || n >= len) {
+			header(prefix, CODEC_NONE, len, len, src, off);
+			out.write(src, off, len);
+			n = len;
+		} else {
+			header(prefix, codec, len, n, comp, 0);
+			out.write(comp, 0, n);
+		}
+		position += n;
+	}
+	
+	private void header(byte[] prefix, byte codec, int rawLen, int compLen, byte[] payload, int off) throws IOException {
+		header[0] = codec;
+		put(header, 1, rawLen);
+		put(header, 5, compLen);
+		int len = HEADER_SIZE;
+		if(prefix != null) {
+			out.write(prefix);
+			position += prefix.length;
+		}
+		if(crc != null) {
+			header[0] |= CHECKSUM;
+			crc.reset();
+			if(prefix != null) {
+				crc.update(prefix, 0, prefix.length);
+			}
+			crc.update(header, 0, HEADER_SIZE);
+			crc.update(payload, off, compLen);
+			put(header, HEADER_SIZE, (int) crc.getValue());
+			len += CHECKSUM_SIZE;
+		}
+		out.write(header, 0, len);
+		position += len;
+	}
+	
+	private static void put(byte[] b, int off, int v) {
+		b[off] = (byte) v;
+		b[off + 1] = (byte) (v >>> 8);
+		b[off + 2] = (byte) (v >>> 16);
+		b[off + 3] = (byte) (v >>> 24);
+	}
+}
@@ -0,0 +1,288 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.util;
+
+import java.io.PrintStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of heap and direct ByteBuffers in power of two size classes. Each thread keeps one buffer per class up to
+ * {@link #MAX_LOCAL_SIZE} before falling back to the shared queues, so a loop that acquires and releases the same size never synchronizes.
+ * Buffers larger than the largest class are not pooled. In debug mode the acquiring stack of every buffer that hasn't
+ * been released is kept for {@link #reportLeaks(PrintStream)}, enabled for {@link #SHARED} with -Dceleutils.bufferpool.debug=true.
+ * Buffers the pool didn't allocate are never kept, so a release of a foreign or sliced buffer can't hand it to another user.
+ */
+public class BufferPool {
+	public static final int MIN_SIZE = 1 << 8;
+	public static final int MAX_SIZE = 1 << 24;
+	public static final int DEFAULT_MAX_PER_CLASS = 16;
+	/** Largest size kept per thread, so idle threads don't hold on to big buffers */
+	public static final int MAX_LOCAL_SIZE = 1 << 16;
+	
+	private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_SIZE);
+	private static final int CLASSES = Integer.numberOfTrailingZeros(MAX_SIZE) - MIN_SHIFT + 1;
+	
+	public static final BufferPool SHARED = new BufferPool(DEFAULT_MAX_PER_CLASS, Boolean.getBoolean("celeutils.bufferpool.debug"));
+	
+	private final int maxPerClass;
+	private final boolean debug;
+	/** Heap classes followed by direct classes */
+	private final ConcurrentLinkedQueue<ByteBuffer>[] queues;
+	private final AtomicIntegerArray queued;
+	private final ThreadLocal<ByteBuffer[]> local = new ThreadLocal<ByteBuffer[]>() {
+		@Override
+		protected ByteBuffer[] initialValue() {
+			return new ByteBuffer[CLASSES * 2];
+		}
+	};
+	private final Map<ByteBuffer, Throwable> outstanding;
+	/** Every pooled size buffer this pool allocated and whether it's in the pool, weakly so dropped buffers can still be collected */
+	private final Map<Owned, Boolean> owned = new ConcurrentHashMap<Owned, Boolean>();
+	private final ReferenceQueue<ByteBuffer> collected = new ReferenceQueue<ByteBuffer>();
+	
+	private final LongAdder acquired = new LongAdder();
+	private final LongAdder reused = new LongAdder();
+	private final LongAdder released = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder allocatedBytes = new LongAdder();
+	
+	public BufferPool() {
+		this(DEFAULT_MAX_PER_CLASS, false);
+	}
+	
+	/** At most maxPerClass buffers of each size class are kept in the shared queues, besides one per thread */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public BufferPool(int maxPerClass, boolean debug) {
+		if(maxPerClass < 0) {
+			throw new IllegalArgumentException("Max per class must not be negative");
+		}
+		this.maxPerClass = maxPerClass;
+		this.debug = debug;
+		queues = new ConcurrentLinkedQueue[CLASSES * 2];
+		for(int i = 0; i < queues.length; i++) {
+			queues[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+		}
+		queued = new AtomicIntegerArray(CLASSES * 2);
+		outstanding = debug ? Collections.synchronizedMap(new IdentityHashMap<ByteBuffer, Throwable>()) : null;
+	}
+	
+	/** Heap buffer with a capacity of at least size, cleared and Big Endian */
+	public ByteBuffer heap(int size) {
+		return acquire(size, false);
+	}
+	
+	/** Direct buffer with a capacity of at least size, cleared and in native order */
+	public ByteBuffer direct(int size) {
+		return acquire(size, true);
+	}
+	
+	/**
+	 * Returns a buffer from this pool, which must not be used afterwards. Buffers not of a pooled size or not allocated
+	 * by this pool are dropped, releasing a buffer twice throws IllegalStateException
+	 */
+	public void release(ByteBuffer buf) {
+		if(debug && outstanding.remove(buf) == null) {
+			throw new IllegalStateException("Buffer not acquired from this pool or already released");
+		}
+		released.increment();
+		
+		int c = sizeClass(buf.capacity());
+		if(c < 0 || buf.isReadOnly() || (1 << (c + MIN_SHIFT)) != buf.capacity()) {
+			dropped.increment();
+			return;
+		}
+		Owned key = new Owned(buf, null);
+		if(!owned.replace(key, Boolean.FALSE, Boolean.TRUE)) {
+			if(owned.containsKey(key)) {
+				throw new IllegalStateException("Buffer already released");
+			}
+			dropped.increment();
+			return;
+		}
+		if(buf.isDirect()) {
+			c += CLASSES;
+		}
+		
+		ByteBuffer[] l = buf.capacity() <= MAX_LOCAL_SIZE ? local.get() : null;
+		if(l != null && l[c] == null) {
+			l[c] = buf;
+		} else if(queued.incrementAndGet(c) <= maxPerClass) {
+			queues[c].offer(buf);
+		} else {
+			queued.decrementAndGet(c);
+			dropped.increment();
+		}
+	}
+	
+	/** Number of buffers acquired so far */
+	public long acquired() {
+		return acquired.sum();
+	}
+	
+	/** Number of acquisitions served with a pooled buffer */
+	public long reused() {
+		return reused.sum();
+	}
+	
+	public long released() {
+		return released.sum();
+	}
+	
+	/** Number of released buffers that were not kept */
+	public long dropped() {
+		return dropped.sum();
+	}
+	
+	/** Bytes allocated for acquisitions that could not be served from the pool */
+	public long allocatedBytes() {
+		return allocatedBytes.sum();
+	}
+	
+	/** Number of buffers acquired and not released, only tracked in debug mode */
+	public int leaks() {
+		return debug ? outstanding.size() : 0;
+	}
+	
+	/** Prints where each buffer that hasn't been released was acquired, only tracked in debug mode */
+	public void reportLeaks(PrintStream out) {
+		if(!debug) {
+			return;
+		}
+		synchronized(outstanding) {
+			for(Throwable t : outstanding.values()) {
+				t.printStackTrace(out);
+			}
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return "BufferPool[acquired=" + acquired() + ", reused=" + reused() + ", released=" + released() + ", dropped=" + dropped()
+				+ ", allocatedBytes=" + allocatedBytes() + (debug ? ", leaks=" + leaks() : "") + "]";
+	}
+	
+	private ByteBuffer acquire(int size, boolean direct) {
+		if(size < 0) {
+			throw new IllegalArgumentException("Negative size");
+		}
+		acquired.increment();
+		
+		ByteBuffer ret = null;
+		int c = sizeClass(size);
+		if(c >= 0) {
+			if(direct) {
+				c += CLASSES;
+			}
+			ByteBuffer[] l = size <= MAX_LOCAL_SIZE ? local.get() : null;
+			if(l != null && l[c] != null) {
+				ret = l[c];
+				l[c] = null;
+			} else {
+				ret = queues[c].poll();
+				if(ret != null) {
+					queued.decrementAndGet(c);
+				}
+			}
+		}
+		
+		if(ret == null) {
+			int capacity = c >= 0 ? 1 << (c % CLASSES + MIN_SHIFT) : size;
+			ret = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+			allocatedBytes.add(capacity);
+			if(c >= 0) {
+				expunge();
+				owned.put(new Owned(ret, collected), Boolean.FALSE);
+			}
+		} else {
+			reused.increment();
+			ret.clear();
+			owned.replace(new Owned(ret, null), Boolean.FALSE);
+		}
+		
+		ret.order(direct ? ByteOrder.nativeOrder() : ByteOrder.BIG_ENDIAN);
+		if(debug) {
+			outstanding.put(ret, new Throwable("Buffer of " + ret.capacity() + " bytes acquired here"));
+		}
+		return ret;
+	}
+	
+	/** Forgets allocated buffers that have been garbage collected */
+	private void expunge() {
+		Reference<? extends ByteBuffer> ref;
+		while((ref = collected.poll()) != null) {
+			owned.remove(ref);
+		}
+	}
+	
+	/** Size class index of a buffer of at least size bytes, -1 if too large to pool */
+	private static int sizeClass(int size) {
+		if(size > MAX_SIZE) {
+			return -1;
+		}
+		if(size <= MIN_SIZE) {
+			return 0;
+		}
+		return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+	}
+	
+	/** Identity key of an allocated buffer */
+	private static final class Owned extends WeakReference<ByteBuffer> {
+		private final int hash;
+		
+		Owned(ByteBuffer buf, ReferenceQueue<ByteBuffer> queue) {
+			super(buf, queue);
+			hash = System.identityHashCode(buf);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if(o == this) {
+				return true;
+			}
+			if(!(o instanceof Owned)) {
+				return false;
+			}
+			ByteBuffer buf = get();
+			return buf != null && buf == ((Owned) o).get();
+		}
+	}
+}
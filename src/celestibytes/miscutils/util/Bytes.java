@@ -27,14 +27,76 @@ package celestibytes.miscutils.util;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 
 
 /** Binary I/O Utils */
 public class Bytes {
 	
+	/** Type indicators */
+	public static final byte TAG_BYTE = 'b';
+	public static final byte TAG_BOOLEAN = 'z';
+	public static final byte TAG_SHORT = 's';
+	public static final byte TAG_INT = 'i';
+	public static final byte TAG_LONG = 'l';
+	public static final byte TAG_FLOAT = 'f';
+	public static final byte TAG_DOUBLE = 'd';
+	public static final byte TAG_STRING = 'x';
+	
+	/** Length-prefixed UTF-8 string */
+	public static final byte TAG_UTF8 = 'u';
+	/** Unsigned LEB128 varints, small non-negative values take fewer bytes */
+	public static final byte TAG_VARSHORT = 'S';
+	public static final byte TAG_VARINT = 'I';
+	public static final byte TAG_VARLONG = 'L';
+	/** Zig-zag encoded LEB128 varints, values close to zero take fewer bytes */
+	public static final byte TAG_ZIGZAGSHORT = 'T';
+	public static final byte TAG_ZIGZAGINT = 'J';
+	public static final byte TAG_ZIGZAGLONG = 'M';
+	/** Array, followed by the element type indicator, a varint length and the elements packed without type indicators */
+	public static final byte TAG_ARRAY = '[';
+	
+	/** Strings are written one byte per char */
+	static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+	static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/** Whether the type indicator is one of the varint types */
+	public static boolean varint(int tag) {
+		switch(tag) {
+		case TAG_VARSHORT:
+		case TAG_VARINT:
+		case TAG_VARLONG:
+		case TAG_ZIGZAGSHORT:
+		case TAG_ZIGZAGINT:
+		case TAG_ZIGZAGLONG:
+			return true;
+		default:
+			return false;
+		}
+	}
+	
+	/** Size of the value following a type indicator, -1 if the size is not fixed or the type is unknown */
+	public static int size(int tag) {
+		switch(tag) {
+		case TAG_BYTE:
+		case TAG_BOOLEAN:
+			return 1;
+		case TAG_SHORT:
+			return 2;
+		case TAG_INT:
+		case TAG_FLOAT:
+			return 4;
+		case TAG_LONG:
+		case TAG_DOUBLE:
+			return 8;
+		default:
+			return -1;
+		}
+	}
+	
 	public static boolean bo(byte[] data) {
 		if(data[1] == 0) {
 			return false;
@@ -49,17 +111,17 @@ public class Bytes {
 	// Always Little Endian
 	public static int i(byte[] data) {
 		int ret = 0;
-		ret |= data[1];
-		ret |= data[2] << 8;
-		ret |= data[3] << 16;
-		ret |= data[4] << 24;
+		ret |= data[1] & 0xFF;
+		ret |= (data[2] & 0xFF) << 8;
+		ret |= (data[3] & 0xFF) << 16;
+		ret |= (data[4] & 0xFF) << 24;
 		return ret;
 	}
 	
 	// Always Little Endian
 	public static short sh(byte[] data) {
 		short ret = 0;
-		ret |= data[1];
+		ret |= data[1] & 0xFF;
 		ret |= data[2] << 8;
 		return ret;
 	}
@@ -67,14 +129,14 @@ public class Bytes {
 	// Always Little Endian
 	public static long l(byte[] data) {
 		long ret = 0;
-		ret |= data[1];
-		ret |= data[2] << 8;
-		ret |= data[3] << 16;
-		ret |= data[4] << 24;
-		ret |= data[5] << 32;
-		ret |= data[6] << 40;
-		ret |= data[7] << 48;
-		ret |= data[8] << 56;
+		ret |= data[1] & 0xFFL;
+		ret |= (data[2] & 0xFFL) << 8;
+		ret |= (data[3] & 0xFFL) << 16;
+		ret |= (data[4] & 0xFFL) << 24;
+		ret |= (data[5] & 0xFFL) << 32;
+		ret |= (data[6] & 0xFFL) << 40;
+		ret |= (data[7] & 0xFFL) << 48;
+		ret |= (data[8] & 0xFFL) << 56;
 		
 		return ret;
 	}
@@ -82,24 +144,24 @@ public class Bytes {
 	// Always Little Endian
 	public static float f(byte[] data) {
 		int ret = 0;
-		ret |= data[1];
-		ret |= data[2] << 8;
-		ret |= data[3] << 16;
-		ret |= data[4] << 24;
+		ret |= data[1] & 0xFF;
+		ret |= (data[2] & 0xFF) << 8;
+		ret |= (data[3] & 0xFF) << 16;
+		ret |= (data[4] & 0xFF) << 24;
 		return Float.intBitsToFloat(ret);
 	}
 	
 	// Always Little Endian
 	public static double d(byte[] data) {
 		long ret = 0;
-		ret |= data[1];
-		ret |= data[2] << 8;
-		ret |= data[3] << 16;
-		ret |= data[4] << 24;
-		ret |= data[5] << 32;
-		ret |= data[6] << 40;
-		ret |= data[7] << 48;
-		ret |= data[8] << 56;
+		ret |= data[1] & 0xFFL;
+		ret |= (data[2] & 0xFFL) << 8;
+		ret |= (data[3] & 0xFFL) << 16;
+		ret |= (data[4] & 0xFFL) << 24;
+		ret |= (data[5] & 0xFFL) << 32;
+		ret |= (data[6] & 0xFFL) << 40;
+		ret |= (data[7] & 0xFFL) << 48;
+		ret |= (data[8] & 0xFFL) << 56;
 		return Double.longBitsToDouble(ret);
 	}
 	
@@ -107,12 +169,221 @@ public class Bytes {
 		if(data.length == 1) {
 			return null;
 		}
-		StringBuilder sb = new StringBuilder();
-		for(int i=0;i<data.length;i++) {
-			sb.append(data[i]);
+		return new String(data, 1, data.length - 1, LATIN1);
+	}
+	
+	/** Decodes a length-prefixed UTF-8 string */
+	public static String u(byte[] data) {
+		return new String(data, 1, data.length - 1, UTF8);
+	}
+	
+	/** Always Little Endian */
+	public static int[] ia(byte[] data) {
+		int[] ret = new int[(data.length - 2) / 4];
+		ints(data, 2, ret, 0, ret.length);
+		return ret;
+	}
+	
+	/** Always Little Endian */
+	public static long[] la(byte[] data) {
+		long[] ret = new long[(data.length - 2) / 8];
+		longs(data, 2, ret, 0, ret.length);
+		return ret;
+	}
+	
+	/** Always Little Endian */
+	public static float[] fa(byte[] data) {
+		float[] ret = new float[(data.length - 2) / 4];
+		floats(data, 2, ret, 0, ret.length);
+		return ret;
+	}
+	
+	/** Always Little Endian */
+	public static double[] da(byte[] data) {
+		double[] ret = new double[(data.length - 2) / 8];
+		doubles(data, 2, ret, 0, ret.length);
+		return ret;
+	}
+	
+	/** Converts len Little Endian ints from src at off into dst at dstOff */
+	public static void ints(byte[] src, int off, int[] dst, int dstOff, int len) {
+		le(src, off, len << 2).asIntBuffer().get(dst, dstOff, len);
+	}
+	
+	/** Converts len Little Endian longs from src at off into dst at dstOff */
+	public static void longs(byte[] src, int off, long[] dst, int dstOff, int len) {
+		le(src, off, len << 3).asLongBuffer().get(dst, dstOff, len);
+	}
+	
+	/** Converts len Little Endian floats from src at off into dst at dstOff */
+	public static void floats(byte[] src, int off, float[] dst, int dstOff, int len) {
+		le(src, off, len << 2).asFloatBuffer().get(dst, dstOff, len);
+	}
+	
+	/** Converts len Little Endian doubles from src at off into dst at dstOff */
+	public static void doubles(byte[] src, int off, double[] dst, int dstOff, int len) {
+		le(src, off, len << 3).asDoubleBuffer().get(dst, dstOff, len);
+	}
+	
+	/** Converts len Little Endian ints from bb at index into dst at dstOff regardless of the buffer's byte order and position */
+	public static void ints(ByteBuffer bb, int index, int[] dst, int dstOff, int len) {
+		le(bb, index, len << 2).asIntBuffer().get(dst, dstOff, len);
+	}
+	
+	/** Converts len Little Endian longs from bb at index into dst at dstOff regardless of the buffer's byte order and position */
+	public static void longs(ByteBuffer bb, int index, long[] dst, int dstOff, int len) {
+		le(bb, index, len << 3).asLongBuffer().get(dst, dstOff, len);
+	}
+	
+	/** Converts len Little Endian floats from bb at index into dst at dstOff regardless of the buffer's byte order and position */
+	public static void floats(ByteBuffer bb, int index, float[] dst, int dstOff, int len) {
+		le(bb, index, len << 2).asFloatBuffer().get(dst, dstOff, len);
+	}
+	
+	/** Converts len Little Endian doubles from bb at index into dst at dstOff regardless of the buffer's byte order and position */
+	public static void doubles(ByteBuffer bb, int index, double[] dst, int dstOff, int len) {
+		le(bb, index, len << 3).asDoubleBuffer().get(dst, dstOff, len);
+	}
+	
+	/** Converts len ints from src at off into dst at dstOff as Little Endian, returns the index after the last byte written */
+	public static int bytes(int[] src, int off, int len, byte[] dst, int dstOff) {
+		le(dst, dstOff, len << 2).asIntBuffer().put(src, off, len);
+		return dstOff + (len << 2);
+	}
+	
+	/** Converts len longs from src at off into dst at dstOff as Little Endian, returns the index after the last byte written */
+	public static int bytes(long[] src, int off, int len, byte[] dst, int dstOff) {
+		le(dst, dstOff, len << 3).asLongBuffer().put(src, off, len);
+		return dstOff + (len << 3);
+	}
+	
+	/** Converts len floats from src at off into dst at dstOff as Little Endian, returns the index after the last byte written */
+	public static int bytes(float[] src, int off, int len, byte[] dst, int dstOff) {
+		le(dst, dstOff, len << 2).asFloatBuffer().put(src, off, len);
+		return dstOff + (len << 2);
+	}
+	
+	/** Converts len doubles from src at off into dst at dstOff as Little Endian, returns the index after the last byte written */
+	public static int bytes(double[] src, int off, int len, byte[] dst, int dstOff) {
+		le(dst, dstOff, len << 3).asDoubleBuffer().put(src, off, len);
+		return dstOff + (len << 3);
+	}
+	
+	/** Converts len ints from src at off into bb at index as Little Endian regardless of the buffer's byte order and position, returns the index after the last byte written */
+	public static int bytes(int[] src, int off, int len, ByteBuffer bb, int index) {
+		le(bb, index, len << 2).asIntBuffer().put(src, off, len);
+		return index + (len << 2);
+	}
+	
+	/** Converts len longs from src at off into bb at index as Little Endian regardless of the buffer's byte order and position, returns the index after the last byte written */
+	public static int bytes(long[] src, int off, int len, ByteBuffer bb, int index) {
+		le(bb, index, len << 3).asLongBuffer().put(src, off, len);
+		return index + (len << 3);
+	}
+	
+	/** Converts len floats from src at off into bb at index as Little Endian regardless of the buffer's byte order and position, returns the index after the last byte written */
+	public static int bytes(float[] src, int off, int len, ByteBuffer bb, int index) {
+		le(bb, index, len << 2).asFloatBuffer().put(src, off, len);
+		return index + (len << 2);
+	}
+	
+	/** Converts len doubles from src at off into bb at index as Little Endian regardless of the buffer's byte order and position, returns the index after the last byte written */
+	public static int bytes(double[] src, int off, int len, ByteBuffer bb, int index) {
+		le(bb, index, len << 3).asDoubleBuffer().put(src, off, len);
+		return index + (len << 3);
+	}
+	
+	private static ByteBuffer le(byte[] b, int off, int len) {
+		return ByteBuffer.wrap(b, off, len).order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	private static ByteBuffer le(ByteBuffer bb, int index, int len) {
+		ByteBuffer ret = bb.duplicate();
+		ret.limit(index + len);
+		ret.position(index);
+		return ret.order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/** Reads byte at index + 1, index being the position of the type indicator */
+	public static byte by(ByteBuffer bb, int index) {
+		return bb.get(index + 1);
+	}
+	
+	/** Reads boolean at index + 1, index being the position of the type indicator */
+	public static boolean bo(ByteBuffer bb, int index) {
+		return bb.get(index + 1) != 0;
+	}
+	
+	/** Reads short at index + 1 regardless of the buffer's byte order, index being the position of the type indicator */
+	public static short sh(ByteBuffer bb, int index) {
+		short v = bb.getShort(index + 1);
+		return bb.order() == ByteOrder.LITTLE_ENDIAN ? v : Short.reverseBytes(v);
+	}
+	
+	/** Reads int at index + 1 regardless of the buffer's byte order, index being the position of the type indicator */
+	public static int i(ByteBuffer bb, int index) {
+		int v = bb.getInt(index + 1);
+		return bb.order() == ByteOrder.LITTLE_ENDIAN ? v : Integer.reverseBytes(v);
+	}
+	
+	/** Reads long at index + 1 regardless of the buffer's byte order, index being the position of the type indicator */
+	public static long l(ByteBuffer bb, int index) {
+		long v = bb.getLong(index + 1);
+		return bb.order() == ByteOrder.LITTLE_ENDIAN ? v : Long.reverseBytes(v);
+	}
+	
+	/** Reads float at index + 1 regardless of the buffer's byte order, index being the position of the type indicator */
+	public static float f(ByteBuffer bb, int index) {
+		return Float.intBitsToFloat(i(bb, index));
+	}
+	
+	/** Reads double at index + 1 regardless of the buffer's byte order, index being the position of the type indicator */
+	public static double d(ByteBuffer bb, int index) {
+		return Double.longBitsToDouble(l(bb, index));
+	}
+	
+	/** Returns the index after the value whose type indicator is at index, -1 if the value is unknown or incomplete */
+	public static int next(ByteBuffer bb, int index) {
+		int tag = bb.get(index);
+		int size = size(tag);
+		if(size >= 0) {
+			return index + 1 + size <= bb.limit() ? index + 1 + size : -1;
 		}
 		
-		return sb.toString();
+		if(tag == TAG_STRING) {
+			for(int i = index + 1; i < bb.limit(); i++) {
+				if(bb.get(i) == 0) {
+					return i + 1;
+				}
+			}
+		} else if(tag == TAG_ARRAY) {
+			int esize = index + 1 < bb.limit() ? size(bb.get(index + 1)) : -1;
+			long len = 0;
+			for(int i = index + 2, shift = 0; esize > 0 && i < bb.limit() && shift < 32; i++, shift += 7) {
+				int b = bb.get(i);
+				len |= (b & 0x7FL) << shift;
+				if((b & 0x80) == 0) {
+					long end = i + 1 + len * esize;
+					return end <= bb.limit() ? (int) end : -1;
+				}
+			}
+		} else if(varint(tag)) {
+			for(int i = index + 1; i < bb.limit() && i < index + 11; i++) {
+				if((bb.get(i) & 0x80) == 0) {
+					return i + 1;
+				}
+			}
+		} else if(tag == TAG_UTF8) {
+			int len = 0;
+			for(int i = index + 1, shift = 0; i < bb.limit() && shift < 32; i++, shift += 7) {
+				int b = bb.get(i);
+				len |= (b & 0x7F) << shift;
+				if((b & 0x80) == 0) {
+					return len >= 0 && len <= bb.limit() - i - 1 ? i + 1 + len : -1;
+				}
+			}
+		}
+		return -1;
 	}
 	
 	/** Validate byte */
@@ -135,6 +406,31 @@ public class Bytes {
 		return data.length > 0 && data[0] == 'x';
 	}
 	
+	/** Validate UTF-8 string */
+	public static boolean vu(byte[] data) {
+		return data.length > 0 && data[0] == 'u';
+	}
+	
+	/** Validate int array */
+	public static boolean via(byte[] data) {
+		return data.length > 1 && data[0] == '[' && data[1] == 'i';
+	}
+	
+	/** Validate long array */
+	public static boolean vla(byte[] data) {
+		return data.length > 1 && data[0] == '[' && data[1] == 'l';
+	}
+	
+	/** Validate float array */
+	public static boolean vfa(byte[] data) {
+		return data.length > 1 && data[0] == '[' && data[1] == 'f';
+	}
+	
+	/** Validate double array */
+	public static boolean vda(byte[] data) {
+		return data.length > 1 && data[0] == '[' && data[1] == 'd';
+	}
+	
 	/** Validate double */
 	public static boolean vd(byte[] data) {
 		return data.length == 9 && data[0] == 'd';
@@ -186,19 +482,19 @@ public class Bytes {
 	/** Write long with type indicator */ 
 	public static void wtl(long v, OutputStream os) throws IOException {
 		os.write('l');
-		os.write((int)(v & 0x255));
-		os.write((int)((v >> 8) & 0x255));
-		os.write((int)((v >> 16) & 0x255));
-		os.write((int)((v >> 24) & 0x255));
-		os.write((int)((v >> 32) & 0x255));
-		os.write((int)((v >> 40) & 0x255));
-		os.write((int)((v >> 48) & 0x255));
-		os.write((int)((v >> 56) & 0x255));
+		os.write((int)(v & 0xFF));
+		os.write((int)((v >> 8) & 0xFF));
+		os.write((int)((v >> 16) & 0xFF));
+		os.write((int)((v >> 24) & 0xFF));
+		os.write((int)((v >> 32) & 0xFF));
+		os.write((int)((v >> 40) & 0xFF));
+		os.write((int)((v >> 48) & 0xFF));
+		os.write((int)((v >> 56) & 0xFF));
 	}
 	
 	/** Write float with type indicator */ 
 	public static void wtf(float vv, OutputStream os) throws IOException {
-		os.write('i');
+		os.write('f');
 		int v = Float.floatToIntBits(vv);
 		os.write(v);
 		os.write(v >> 8);
@@ -210,14 +506,14 @@ public class Bytes {
 	public static void wtd(double vv, OutputStream os) throws IOException {
 		os.write('d');
 		long v = Double.doubleToLongBits(vv);
-		os.write((int)(v & 0x255));
-		os.write((int)((v >> 8) & 0x255));
-		os.write((int)((v >> 16) & 0x255));
-		os.write((int)((v >> 24) & 0x255));
-		os.write((int)((v >> 32) & 0x255));
-		os.write((int)((v >> 40) & 0x255));
-		os.write((int)((v >> 48) & 0x255));
-		os.write((int)((v >> 56) & 0x255));
+		os.write((int)(v & 0xFF));
+		os.write((int)((v >> 8) & 0xFF));
+		os.write((int)((v >> 16) & 0xFF));
+		os.write((int)((v >> 24) & 0xFF));
+		os.write((int)((v >> 32) & 0xFF));
+		os.write((int)((v >> 40) & 0xFF));
+		os.write((int)((v >> 48) & 0xFF));
+		os.write((int)((v >> 56) & 0xFF));
 	}
 	
 	/** Write string with type indicator, null-terminated, any nulls in the string will be ignored! */
@@ -233,6 +529,83 @@ public class Bytes {
 		os.write('\0');
 	}
 	
+	/** Write string with type indicator as length-prefixed UTF-8 */
+	public static void wtu(String v, OutputStream os) throws IOException {
+		os.write('u');
+		wu(v, os);
+	}
+	
+	/** Write short with type indicator as unsigned varint */
+	public static void wtvsh(short v, OutputStream os) throws IOException {
+		os.write('S');
+		wvl(v & 0xFFFF, os);
+	}
+	
+	/** Write int with type indicator as unsigned varint */
+	public static void wtvi(int v, OutputStream os) throws IOException {
+		os.write('I');
+		wvl(v & 0xFFFFFFFFL, os);
+	}
+	
+	/** Write long with type indicator as unsigned varint */
+	public static void wtvl(long v, OutputStream os) throws IOException {
+		os.write('L');
+		wvl(v, os);
+	}
+	
+	/** Write short with type indicator as zig-zag varint */
+	public static void wtzsh(short v, OutputStream os) throws IOException {
+		os.write('T');
+		wvl(((v << 1) ^ (v >> 15)) & 0xFFFF, os);
+	}
+	
+	/** Write int with type indicator as zig-zag varint */
+	public static void wtzi(int v, OutputStream os) throws IOException {
+		os.write('J');
+		wvl(((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL, os);
+	}
+	
+	/** Write long with type indicator as zig-zag varint */
+	public static void wtzl(long v, OutputStream os) throws IOException {
+		os.write('M');
+		wzl(v, os);
+	}
+	
+	/** Write int array with type indicator */
+	public static void wtia(int[] v, OutputStream os) throws IOException {
+		byte[] b = new byte[v.length * 4];
+		bytes(v, 0, v.length, b, 0);
+		wta(TAG_INT, v.length, b, os);
+	}
+	
+	/** Write long array with type indicator */
+	public static void wtla(long[] v, OutputStream os) throws IOException {
+		byte[] b = new byte[v.length * 8];
+		bytes(v, 0, v.length, b, 0);
+		wta(TAG_LONG, v.length, b, os);
+	}
+	
+	/** Write float array with type indicator */
+	public static void wtfa(float[] v, OutputStream os) throws IOException {
+		byte[] b = new byte[v.length * 4];
+		bytes(v, 0, v.length, b, 0);
+		wta(TAG_FLOAT, v.length, b, os);
+	}
+	
+	/** Write double array with type indicator */
+	public static void wtda(double[] v, OutputStream os) throws IOException {
+		byte[] b = new byte[v.length * 8];
+		bytes(v, 0, v.length, b, 0);
+		wta(TAG_DOUBLE, v.length, b, os);
+	}
+	
+	private static void wta(byte elem, int len, byte[] payload, OutputStream os) throws IOException {
+		os.write('[');
+		os.write(elem);
+		wvl(len, os);
+		os.write(payload);
+	}
+	
 	/** Write byte */ 
 	public static void wby(byte v, OutputStream os) throws IOException {
 		os.write(v);
@@ -259,14 +632,14 @@ public class Bytes {
 	
 	/** Write long */ 
 	public static void wl(long v, OutputStream os) throws IOException {
-		os.write((int)(v & 0x255));
-		os.write((int)((v >> 8) & 0x255));
-		os.write((int)((v >> 16) & 0x255));
-		os.write((int)((v >> 24) & 0x255));
-		os.write((int)((v >> 32) & 0x255));
-		os.write((int)((v >> 40) & 0x255));
-		os.write((int)((v >> 48) & 0x255));
-		os.write((int)((v >> 56) & 0x255));
+		os.write((int)(v & 0xFF));
+		os.write((int)((v >> 8) & 0xFF));
+		os.write((int)((v >> 16) & 0xFF));
+		os.write((int)((v >> 24) & 0xFF));
+		os.write((int)((v >> 32) & 0xFF));
+		os.write((int)((v >> 40) & 0xFF));
+		os.write((int)((v >> 48) & 0xFF));
+		os.write((int)((v >> 56) & 0xFF));
 	}
 	
 	/** Write float */ 
@@ -281,14 +654,14 @@ public class Bytes {
 	/** Write double */ 
 	public static void wd(double vv, OutputStream os) throws IOException {
 		long v = Double.doubleToLongBits(vv);
-		os.write((int)(v & 0x255));
-		os.write((int)((v >> 8) & 0x255));
-		os.write((int)((v >> 16) & 0x255));
-		os.write((int)((v >> 24) & 0x255));
-		os.write((int)((v >> 32) & 0x255));
-		os.write((int)((v >> 40) & 0x255));
-		os.write((int)((v >> 48) & 0x255));
-		os.write((int)((v >> 56) & 0x255));
+		os.write((int)(v & 0xFF));
+		os.write((int)((v >> 8) & 0xFF));
+		os.write((int)((v >> 16) & 0xFF));
+		os.write((int)((v >> 24) & 0xFF));
+		os.write((int)((v >> 32) & 0xFF));
+		os.write((int)((v >> 40) & 0xFF));
+		os.write((int)((v >> 48) & 0xFF));
+		os.write((int)((v >> 56) & 0xFF));
 	}
 	
 	/** Write string, null-terminated, any nulls in the string will be ignored! */
@@ -303,7 +676,28 @@ public class Bytes {
 		os.write('\0');
 	}
 	
-	/** Read byte with type indicator, returns null if end of stream has been reached */
+	/** Write string as length-prefixed UTF-8 */
+	public static void wu(String v, OutputStream os) throws IOException {
+		byte[] b = v.getBytes(UTF8);
+		wvl(b.length, os);
+		os.write(b);
+	}
+	
+	/** Write long as unsigned varint */
+	public static void wvl(long v, OutputStream os) throws IOException {
+		while((v & ~0x7FL) != 0) {
+			os.write((int) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		os.write((int) v);
+	}
+	
+	/** Write long as zig-zag varint */
+	public static void wzl(long v, OutputStream os) throws IOException {
+		wvl((v << 1) ^ (v >> 63), os);
+	}
+	
+	/** Read byte with type indicator, returns null if end of stream has been reached. Varints are returned as fixed-size values */
 	public static byte[] read(InputStream is) throws IOException {
 		int buf = is.read();
 		int toread = 0;
@@ -327,38 +721,17 @@ public class Bytes {
 		} else if(buf == 'd') { // double
 			toread = 8;
 		} else if(buf == 'x') { // string
-			List<byte[]> bytes = new LinkedList<byte[]>();
-			int count = 0;
-			byte[] byt = new byte[8];
-			int pos = 0;
-			while(buf != '\0') {
-				if(pos > 7) {
-					bytes.add(byt);
-					count++;
-					byt = new byte[8];
-					pos = 0;
-				}
-				byt[pos] = (byte)buf;
-				pos++;
-				buf = is.read();
-				if(buf == -1) {
-					return null;
-				}
-			}
-			
-			byte[] ret = new byte[count * 8 + pos - 1];
-			System.arraycopy(byt, 0, ret, count * 8, pos - 1);
-			
-			Iterator<byte[]> bite = bytes.iterator();
-			int i = 0;
-			while(bite.hasNext()) {
-				byt = bite.next();
-				System.arraycopy(byt, 0, ret, i, 8);
-				i += 8;
-			}
-			
-			return ret;
-			
+			return rst(is);
+		} else if(buf == 'u') { // UTF-8 string
+			return ru(is);
+		} else if(buf == '[') { // array
+			return ra(is);
+		} else if(buf == 'S' || buf == 'T') { // varint short
+			return rv(is, TAG_SHORT, 2, buf == 'T');
+		} else if(buf == 'I' || buf == 'J') { // varint int
+			return rv(is, TAG_INT, 4, buf == 'J');
+		} else if(buf == 'L' || buf == 'M') { // varint long
+			return rv(is, TAG_LONG, 8, buf == 'M');
 		} else { // other?
 			return null;
 		}
@@ -538,43 +911,188 @@ public class Bytes {
 		return ret;
 	}
 	
-	/** Read string */
+	/** Read string, collected in a pooled scratch buffer */
 	public static byte[] rst(InputStream is) throws IOException {
-		List<byte[]> bytes = new LinkedList<byte[]>();
-		int count = 0;
-		byte[] byt = new byte[8];
-		byt[0] = 'x';
+		ByteBuffer tmp = BufferPool.SHARED.heap(BufferPool.MIN_SIZE);
+		try {
+			byte[] ret = tmp.array();
+			ret[0] = 'x';
+			int pos = 1;
+			int buf = is.read();
+			while(buf != '\0') {
+				if(buf == -1) {
+					return null;
+				}
+				
+				if(pos == ret.length) {
+					ByteBuffer grown = BufferPool.SHARED.heap(pos * 2);
+					System.arraycopy(ret, 0, grown.array(), 0, pos);
+					BufferPool.SHARED.release(tmp);
+					tmp = grown;
+					ret = tmp.array();
+				}
+				ret[pos++] = (byte) buf;
+				buf = is.read();
+			}
+			
+			return Arrays.copyOf(ret, pos);
+		} finally {
+			BufferPool.SHARED.release(tmp);
+		}
+	}
+	
+	/** Read length-prefixed UTF-8 string */
+	public static byte[] ru(InputStream is) throws IOException {
+		int len = rlen(is);
+		if(len < 0) {
+			return null;
+		}
+		
+		byte[] ret = new byte[len + 1];
+		ret[0] = 'u';
 		int pos = 1;
-		int buf = 'A';
-		while(buf != '\0') {
-			if(pos > 7) {
-				bytes.add(byt);
-				count++;
-				byt = new byte[8];
-				pos = 0;
+		while(pos < ret.length) {
+			int read = is.read(ret, pos, ret.length - pos);
+			if(read == -1) {
+				return null;
+			}
+			pos += read;
+		}
+		
+		return ret;
+	}
+	
+	/** Reads an unsigned LEB128 length, -1 if end of stream has been reached */
+	private static int rlen(InputStream is) throws IOException {
+		int ret = 0;
+		for(int shift = 0; shift < 32; shift += 7) {
+			int buf = is.read();
+			if(buf == -1) {
+				return -1;
 			}
 			
+			ret |= (buf & 0x7F) << shift;
+			if((buf & 0x80) == 0) {
+				return ret < 0 ? -1 : ret;
+			}
+		}
+		throw new IOException("Malformed length");
+	}
+	
+	/** Read array, the type indicator already having been read */
+	private static byte[] ra(InputStream is) throws IOException {
+		int elem = is.read();
+		int len = rlen(is);
+		if(elem == -1 || len < 0) {
+			return null;
+		}
+		
+		int esize = size(elem);
+		if(esize < 1 || (long) len * esize > Integer.MAX_VALUE - 2) {
+			return null;
+		}
+		
+		byte[] ret = new byte[len * esize + 2];
+		ret[0] = '[';
+		ret[1] = (byte) elem;
+		int pos = 2;
+		while(pos < ret.length) {
+			int read = is.read(ret, pos, ret.length - pos);
+			if(read == -1) {
+				return null;
+			}
+			pos += read;
+		}
+		return ret;
+	}
+	
+	/** Reads a varint into a fixed-size value with the given type indicator, returns null if end of stream has been reached */
+	private static byte[] rv(InputStream is, byte tag, int size, boolean zigzag) throws IOException {
+		long v = 0;
+		int buf;
+		int shift = 0;
+		do {
+			if(shift > 63) {
+				throw new IOException("Malformed varint");
+			}
 			buf = is.read();
-			
 			if(buf == -1) {
 				return null;
 			}
-			
-			byt[pos] = (byte)buf;
-			pos++;
-		}
+			v |= (buf & 0x7FL) << shift;
+			shift += 7;
+		} while((buf & 0x80) != 0);
 		
-		byte[] ret = new byte[count * 8 + pos - 1];
-		System.arraycopy(byt, 0, ret, count * 8, pos - 1);
+		if(zigzag) {
+			v = (v >>> 1) ^ -(v & 1);
+		}
 		
-		Iterator<byte[]> bite = bytes.iterator();
+		byte[] ret = new byte[size + 1];
+		ret[0] = tag;
+		for(int i = 1; i <= size; i++) {
+			ret[i] = (byte) v;
+			v >>= 8;
+		}
+		return ret;
+	}
+	
+	/** Number of bytes needed to encode the string as UTF-8 */
+	static int utf8Length(String v) {
+		int len = v.length();
+		int ret = len;
+		char c;
+		for(int i = 0; i < len; i++) {
+			c = v.charAt(i);
+			if(c >= 0x80) {
+				if(c < 0x800) {
+					ret += 1;
+				} else if(!Character.isSurrogate(c)) {
+					ret += 2;
+				} else if(Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(v.charAt(i + 1))) {
+					ret += 2;
+					i++;
+				} // Unpaired surrogates are written as '?'
+			}
+		}
+		return ret;
+	}
+	
+	/** Encodes the string as UTF-8 into dst, utf8Length being the result of {@link #utf8Length(String)}, returns the end index */
+	static int utf8(String v, int utf8Length, byte[] dst, int off) {
+		int len = v.length();
 		int i = 0;
-		while(bite.hasNext()) {
-			byt = bite.next();
-			System.arraycopy(byt, 0, ret, i, 8);
-			i += 8;
+		char c;
+		if(utf8Length == len) { // Likely ASCII, copy without branching on the encoding
+			for(; i < len; i++) {
+				c = v.charAt(i);
+				if(c >= 0x80) {
+					break;
+				}
+				dst[off++] = (byte) c;
+			}
 		}
 		
-		return ret;
+		for(; i < len; i++) {
+			c = v.charAt(i);
+			if(c < 0x80) {
+				dst[off++] = (byte) c;
+			} else if(c < 0x800) {
+				dst[off++] = (byte) (0xC0 | c >> 6);
+				dst[off++] = (byte) (0x80 | c & 0x3F);
+			} else if(!Character.isSurrogate(c)) {
+				dst[off++] = (byte) (0xE0 | c >> 12);
+				dst[off++] = (byte) (0x80 | c >> 6 & 0x3F);
+				dst[off++] = (byte) (0x80 | c & 0x3F);
+			} else if(Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(v.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, v.charAt(++i));
+				dst[off++] = (byte) (0xF0 | cp >> 18);
+				dst[off++] = (byte) (0x80 | cp >> 12 & 0x3F);
+				dst[off++] = (byte) (0x80 | cp >> 6 & 0x3F);
+				dst[off++] = (byte) (0x80 | cp & 0x3F);
+			} else {
+				dst[off++] = '?';
+			}
+		}
+		return off;
 	}
 }
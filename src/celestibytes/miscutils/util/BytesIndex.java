@@ -0,0 +1,162 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Sparse index of value offsets in a stream written with the Bytes.wt* methods, the offset of every
+ * interval:th value is stored. Seeking to value n is a lookup followed by skipping at most interval - 1 values.
+ * Built while writing with {@link TypedWriter#setIndex(BytesIndex)} or by scanning an existing stream.
+ */
+public class BytesIndex {
+	public static final int DEFAULT_INTERVAL = 256;
+	
+	private static final int MAGIC = 0x58444942; // "BIDX"
+	/** Magic, interval, count and size, followed by size offsets */
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+	
+	private final int interval;
+	private long count = 0;
+	private long[] offsets = new long[16];
+	private int size = 0;
+	
+	public BytesIndex() {
+		this(DEFAULT_INTERVAL);
+	}
+	
+	public BytesIndex(int interval) {
+		if(interval < 1) {
+			throw new IllegalArgumentException("Interval must be at least 1");
+		}
+		this.interval = interval;
+	}
+	
+	/** Indexes every value of the reader from its current position to the end */
+	public static BytesIndex scan(TypedReader reader, int interval) throws IOException {
+		BytesIndex ret = new BytesIndex(interval);
+		while(reader.hasNext()) {
+			ret.add(reader.position());
+			reader.skip();
+		}
+		return ret;
+	}
+	
+	/** Reads an index written with {@link #write(OutputStream)}, consuming exactly its bytes so it can be embedded in a larger stream */
+	public static BytesIndex read(InputStream is) throws IOException {
+		TypedReader r = new TypedReader(readFully(is, HEADER_SIZE));
+		if(r.getInt() != MAGIC) {
+			throw new IOException("Not an index");
+		}
+		
+		int interval = r.getInt();
+		long count = r.getLong();
+		int size = r.getInt();
+		if(interval < 1 || count < 0 || size < 0 || size != (count + interval - 1) / interval || size > Integer.MAX_VALUE / 8) {
+			throw new IOException("Corrupt index header");
+		}
+		
+		BytesIndex ret = new BytesIndex(interval);
+		ret.count = count;
+		ret.size = size;
+		ret.offsets = new long[Math.max(size, 16)];
+		r = new TypedReader(readFully(is, size * 8));
+		for(int i = 0; i < size; i++) {
+			ret.offsets[i] = r.getLong();
+		}
+		return ret;
+	}
+	
+	private static ByteBuffer readFully(InputStream is, int len) throws IOException {
+		byte[] b = new byte[len];
+		for(int n = 0; n < len;) {
+			int read = is.read(b, n, len - n);
+			if(read < 0) {
+				throw new EOFException("Truncated index");
+			}
+			n += read;
+		}
+		return ByteBuffer.wrap(b);
+	}
+	
+	/** Called with the offset of each value in order */
+	public void add(long offset) {
+		if(count % interval == 0) {
+			if(size == offsets.length) {
+				offsets = Arrays.copyOf(offsets, size * 2);
+			}
+			offsets[size++] = offset;
+		}
+		count++;
+	}
+	
+	/** Number of values indexed */
+	public long count() {
+		return count;
+	}
+	
+	public int interval() {
+		return interval;
+	}
+	
+	/** Offset of the closest indexed value at or before value n */
+	public long offset(long n) {
+		if(n < 0 || n >= count) {
+			throw new IndexOutOfBoundsException("Value " + n + " of " + count);
+		}
+		return offsets[(int) (n / interval)];
+	}
+	
+	/** Moves the reader to value n, the reader must be able to seek to the indexed offsets */
+	public void seek(TypedReader reader, long n) throws IOException {
+		reader.seek(offset(n));
+		for(long i = n % interval; i > 0; i--) {
+			reader.skip();
+		}
+	}
+	
+	/** Writes the index, doesn't close the stream */
+	public void write(OutputStream os) throws IOException {
+		TypedWriter w = new TypedWriter(os);
+		try {
+			w.putInt(MAGIC);
+			w.putInt(interval);
+			w.putLong(count);
+			w.putInt(size);
+			for(int i = 0; i < size; i++) {
+				w.putLong(offsets[i]);
+			}
+			w.flush();
+		} finally {
+			w.release();
+		}
+	}
+}
@@ -0,0 +1,298 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+
+package celestibytes.miscutils.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters for TypedReader and TypedWriter, attached with setMetrics. Values are counted by type indicator,
+ * buffer fills and drains by latency. A reader or writer without metrics only pays for a null check.
+ * Counters are LongAdders, so one instance can be shared by readers and writers on many threads.
+ */
+public class BytesMetrics implements BytesMetricsMXBean {
+	public static final String DOMAIN = "celestibytes.miscutils";
+	/** Number of latency buckets, the last one holds everything slower */
+	public static final int BUCKETS = 40;
+	
+	private static final int TAGS = 128;
+	
+	private final LongAdder[] reads = adders(TAGS);
+	private final LongAdder[] writes = adders(TAGS);
+	private final LongAdder bytesRead = new LongAdder();
+	private final LongAdder bytesWritten = new LongAdder();
+	private final LongAdder fillNanos = new LongAdder();
+	private final LongAdder[] fillLatencies = adders(BUCKETS);
+	private final LongAdder drainNanos = new LongAdder();
+	private final LongAdder[] drainLatencies = adders(BUCKETS);
+	private final LongAdder strings = new LongAdder();
+	private final LongAdder arrays = new LongAdder();
+	private final LongAdder bytesAllocated = new LongAdder();
+	private final LongAdder grows = new LongAdder();
+	
+	private volatile long start = System.nanoTime();
+	private ObjectName name;
+	
+	/** Registers this with the platform MBean server under celestibytes.miscutils:type=BytesMetrics,name=name */
+	public synchronized ObjectName register(String name) throws JMException {
+		ObjectName on = new ObjectName(DOMAIN + ":type=BytesMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+		if(this.name != null) {
+			unregister();
+		}
+		this.name = on;
+		return on;
+	}
+	
+	/** Removes this from the platform MBean server if registered */
+	public synchronized void unregister() throws JMException {
+		if(name != null) {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+			name = null;
+		}
+	}
+	
+	/** Number of values with the given type indicator read */
+	public long reads(byte tag) {
+		return tag < 0 ? 0 : reads[tag].sum();
+	}
+	
+	/** Number of values with the given type indicator written */
+	public long writes(byte tag) {
+		return tag < 0 ? 0 : writes[tag].sum();
+	}
+	
+	@Override
+	public long getValuesRead() {
+		return sum(reads);
+	}
+	
+	@Override
+	public long getValuesWritten() {
+		return sum(writes);
+	}
+	
+	@Override
+	public Map<String, Long> getReadsByType() {
+		return byType(reads);
+	}
+	
+	@Override
+	public Map<String, Long> getWritesByType() {
+		return byType(writes);
+	}
+	
+	@Override
+	public long getBytesRead() {
+		return bytesRead.sum();
+	}
+	
+	@Override
+	public long getBytesWritten() {
+		return bytesWritten.sum();
+	}
+	
+	@Override
+	public double getReadThroughput() {
+		return perSecond(bytesRead.sum());
+	}
+	
+	@Override
+	public double getWriteThroughput() {
+		return perSecond(bytesWritten.sum());
+	}
+	
+	@Override
+	public long getFills() {
+		return sum(fillLatencies);
+	}
+	
+	@Override
+	public long getFillNanos() {
+		return fillNanos.sum();
+	}
+	
+	@Override
+	public long[] getFillLatencies() {
+		return sums(fillLatencies);
+	}
+	
+	@Override
+	public long getDrains() {
+		return sum(drainLatencies);
+	}
+	
+	@Override
+	public long getDrainNanos() {
+		return drainNanos.sum();
+	}
+	
+	@Override
+	public long[] getDrainLatencies() {
+		return sums(drainLatencies);
+	}
+	
+	@Override
+	public long getStringsAllocated() {
+		return strings.sum();
+	}
+	
+	@Override
+	public long getArraysAllocated() {
+		return arrays.sum();
+	}
+	
+	@Override
+	public long getBytesAllocated() {
+		return bytesAllocated.sum();
+	}
+	
+	@Override
+	public long getBufferGrows() {
+		return grows.sum();
+	}
+	
+	/** Zeroes all counters and restarts the throughput clock, not atomic with respect to concurrent updates */
+	@Override
+	public void reset() {
+		reset(reads);
+		reset(writes);
+		reset(fillLatencies);
+		reset(drainLatencies);
+		bytesRead.reset();
+		bytesWritten.reset();
+		fillNanos.reset();
+		drainNanos.reset();
+		strings.reset();
+		arrays.reset();
+		bytesAllocated.reset();
+		grows.reset();
+		start = System.nanoTime();
+	}
+	
+	@Override
+	public String toString() {
+		return "BytesMetrics[read=" + getValuesRead() + " values/" + getBytesRead() + " bytes, written=" + getValuesWritten()
+				+ " values/" + getBytesWritten() + " bytes, fills=" + getFills() + ", drains=" + getDrains()
+				+ ", allocated=" + getBytesAllocated() + " bytes]";
+	}
+	
+	void read(byte tag) {
+		if(tag >= 0) {
+			reads[tag].increment();
+		}
+	}
+	
+	void wrote(byte tag) {
+		if(tag >= 0) {
+			writes[tag].increment();
+		}
+	}
+	
+	void filled(int bytes, long nanos) {
+		if(bytes > 0) {
+			bytesRead.add(bytes);
+		}
+		fillNanos.add(nanos);
+		fillLatencies[bucket(nanos)].increment();
+	}
+	
+	void drained(int bytes, long nanos) {
+		bytesWritten.add(bytes);
+		drainNanos.add(nanos);
+		drainLatencies[bucket(nanos)].increment();
+	}
+	
+	void string(int bytes) {
+		strings.increment();
+		bytesAllocated.add(bytes);
+	}
+	
+	void array(long bytes) {
+		arrays.increment();
+		bytesAllocated.add(bytes);
+	}
+	
+	void grew() {
+		grows.increment();
+	}
+	
+	private double perSecond(long n) {
+		long nanos = System.nanoTime() - start;
+		return nanos <= 0 ? 0 : n * 1e9 / nanos;
+	}
+	
+	private static int bucket(long nanos) {
+		return Math.min(64 - Long.numberOfLeadingZeros(nanos), BUCKETS - 1);
+	}
+	
+	private static Map<String, Long> byType(LongAdder[] counts) {
+		Map<String, Long> ret = new LinkedHashMap<String, Long>();
+		for(int i = 0; i < counts.length; i++) {
+			long n = counts[i].sum();
+			if(n > 0) {
+				ret.put(String.valueOf((char) i), n);
+			}
+		}
+		return ret;
+	}
+	
+	private static long sum(LongAdder[] counts) {
+		long ret = 0;
+		for(LongAdder c : counts) {
+			ret += c.sum();
+		}
+		return ret;
+	}
+	
+	private static long[] sums(LongAdder[] counts) {
+		long[] ret = new long[counts.length];
+		for(int i = 0; i < ret.length; i++) {
+			ret[i] = counts[i].sum();
+		}
+		return ret;
+	}
+	
+	private static void reset(LongAdder[] counts) {
+		for(LongAdder c : counts) {
+			c.reset();
+		}
+	}
+	
+	private static LongAdder[] adders(int n) {
+		LongAdder[] ret = new LongAdder[n];
+		for(int i = 0; i < n; i++) {
+			ret[i] = new LongAdder();
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,75 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+
+package celestibytes.miscutils.util;
+
+import java.util.Map;
+
+/** Management interface of {@link BytesMetrics}, counts by type indicator are keyed by the indicator character */
+public interface BytesMetricsMXBean {
+	public long getValuesRead();
+	
+	public long getValuesWritten();
+	
+	public Map<String, Long> getReadsByType();
+	
+	public Map<String, Long> getWritesByType();
+	
+	public long getBytesRead();
+	
+	public long getBytesWritten();
+	
+	/** Bytes read per second since creation or the last reset */
+	public double getReadThroughput();
+	
+	/** Bytes written per second since creation or the last reset */
+	public double getWriteThroughput();
+	
+	public long getFills();
+	
+	public long getFillNanos();
+	
+	/** Fill count by latency, bucket i holding fills that took less than 2^i nanoseconds */
+	public long[] getFillLatencies();
+	
+	public long getDrains();
+	
+	public long getDrainNanos();
+	
+	/** Drain count by latency, bucket i holding drains that took less than 2^i nanoseconds */
+	public long[] getDrainLatencies();
+	
+	public long getStringsAllocated();
+	
+	public long getArraysAllocated();
+	
+	/** Bytes of strings and arrays allocated for decoded values */
+	public long getBytesAllocated();
+	
+	public long getBufferGrows();
+	
+	public void reset();
+}
@@ -0,0 +1,301 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+
+package celestibytes.miscutils.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Random access to a table written with {@link ColumnWriter}. Only the footer is read when opening, chunks are
+ * memory mapped and decoded one at a time, so a scan reads only the columns it asks for and can skip whole chunks
+ * by their min/max with {@link #overlaps(int, int, long, long)}. Reads can be made from many threads at once.
+ */
+public class ColumnReader implements Closeable {
+	private final FileChannel fc;
+	private final String[] names;
+	private final byte[] types;
+	private final long[][] offsets;
+	private final int[][] lengths;
+	/** Index of the first row of each chunk, the total row count last */
+	private final long[][] first;
+	/** Double bits for floating point columns */
+	private final long[][] min;
+	private final long[][] max;
+	
+	public ColumnReader(File file) throws IOException {
+		this(new RandomAccessFile(file, "r").getChannel(), true);
+	}
+	
+	public ColumnReader(FileChannel fc) throws IOException {
+		this(fc, false);
+	}
+	
+	/** Closes the channel if it's owned and the footer can't be read */
+	private ColumnReader(FileChannel fc, boolean owned) throws IOException {
+		this.fc = fc;
+		try {
+			long size = fc.size();
+			if(size < ColumnWriter.TRAILER_SIZE) {
+				throw new EOFException("Truncated column file");
+			}
+			
+			ByteBuffer t = ByteBuffer.allocate(ColumnWriter.TRAILER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			read(t, size - ColumnWriter.TRAILER_SIZE);
+			long footer = t.getLong(0);
+			if(t.getInt(8) != ColumnWriter.MAGIC || footer < 0 || footer > size - ColumnWriter.TRAILER_SIZE) {
+				throw new IOException("Not a column file");
+			}
+			
+			ByteBuffer f = ByteBuffer.allocate((int) (size - ColumnWriter.TRAILER_SIZE - footer));
+			read(f, footer);
+			f.flip();
+			TypedReader r = new TypedReader(f);
+			int columns = r.readInt();
+			names = new String[columns];
+			types = new byte[columns];
+			offsets = new long[columns][];
+			lengths = new int[columns][];
+			first = new long[columns][];
+			min = new long[columns][];
+			max = new long[columns][];
+			for(int c = 0; c < columns; c++) {
+				names[c] = r.readString();
+				types[c] = r.readByte();
+				int chunks = r.readInt();
+				offsets[c] = new long[chunks];
+				lengths[c] = new int[chunks];
+				first[c] = new long[chunks + 1];
+				min[c] = new long[chunks];
+				max[c] = new long[chunks];
+				boolean floating = types[c] == Bytes.TAG_FLOAT || types[c] == Bytes.TAG_DOUBLE;
+				for(int i = 0; i < chunks; i++) {
+					offsets[c][i] = r.readLong();
+					lengths[c][i] = r.readInt();
+					first[c][i + 1] = first[c][i] + r.readInt();
+					if(floating) {
+						min[c][i] = Double.doubleToLongBits(r.readDouble());
+						max[c][i] = Double.doubleToLongBits(r.readDouble());
+					} else {
+						min[c][i] = r.readLong();
+						max[c][i] = r.readLong();
+					}
+				}
+			}
+		} catch(IOException | RuntimeException e) {
+			if(owned) {
+				try {
+					fc.close();
+				} catch(IOException ce) {
+					e.addSuppressed(ce);
+				}
+			}
+			throw e;
+		}
+	}
+	
+	public int columns() {
+		return names.length;
+	}
+	
+	/** Index of the column with the given name, -1 if there is none */
+	public int column(String name) {
+		for(int i = 0; i < names.length; i++) {
+			if(names[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	public String name(int col) {
+		return names[col];
+	}
+	
+	/** Bytes.TAG_INT, TAG_LONG, TAG_FLOAT or TAG_DOUBLE */
+	public byte type(int col) {
+		return types[col];
+	}
+	
+	public long rows() {
+		return names.length == 0 ? 0 : first[0][first[0].length - 1];
+	}
+	
+	public int chunks(int col) {
+		return offsets[col].length;
+	}
+	
+	/** Index of the first row of the chunk */
+	public long firstRow(int col, int chunk) {
+		return first[col][chunk];
+	}
+	
+	public int rows(int col, int chunk) {
+		return (int) (first[col][chunk + 1] - first[col][chunk]);
+	}
+	
+	/** Smallest value in the chunk, rounded down for floating point columns */
+	public long minLong(int col, int chunk) {
+		return floating(col) ? (long) Math.floor(minDouble(col, chunk)) : min[col][chunk];
+	}
+	
+	/** Largest value in the chunk, rounded up for floating point columns */
+	public long maxLong(int col, int chunk) {
+		return floating(col) ? (long) Math.ceil(maxDouble(col, chunk)) : max[col][chunk];
+	}
+	
+	/** Smallest value in the chunk other than NaN, positive infinity if there is none */
+	public double minDouble(int col, int chunk) {
+		return floating(col) ? Double.longBitsToDouble(min[col][chunk]) : min[col][chunk];
+	}
+	
+	/** Largest value in the chunk other than NaN, negative infinity if there is none */
+	public double maxDouble(int col, int chunk) {
+		return floating(col) ? Double.longBitsToDouble(max[col][chunk]) : max[col][chunk];
+	}
+	
+	/** Whether the chunk may hold values in [lo, hi], chunks for which this is false can be skipped */
+	public boolean overlaps(int col, int chunk, long lo, long hi) {
+		return maxLong(col, chunk) >= lo && minLong(col, chunk) <= hi;
+	}
+	
+	/** Whether the chunk may hold values in [lo, hi], chunks for which this is false can be skipped */
+	public boolean overlaps(int col, int chunk, double lo, double hi) {
+		return maxDouble(col, chunk) >= lo && minDouble(col, chunk) <= hi;
+	}
+	
+	public int[] readInts(int col, int chunk) throws IOException {
+		return reader(col, chunk).readInts();
+	}
+	
+	public long[] readLongs(int col, int chunk) throws IOException {
+		return reader(col, chunk).readLongs();
+	}
+	
+	public float[] readFloats(int col, int chunk) throws IOException {
+		return reader(col, chunk).readFloats();
+	}
+	
+	public double[] readDoubles(int col, int chunk) throws IOException {
+		return reader(col, chunk).readDoubles();
+	}
+	
+	/** Read the chunk into dst, returns the number of rows read */
+	public int readInts(int col, int chunk, int[] dst, int off) throws IOException {
+		return reader(col, chunk).readInts(dst, off);
+	}
+	
+	/** Read the chunk into dst, returns the number of rows read */
+	public int readLongs(int col, int chunk, long[] dst, int off) throws IOException {
+		return reader(col, chunk).readLongs(dst, off);
+	}
+	
+	/** Read the chunk into dst, returns the number of rows read */
+	public int readFloats(int col, int chunk, float[] dst, int off) throws IOException {
+		return reader(col, chunk).readFloats(dst, off);
+	}
+	
+	/** Read the chunk into dst, returns the number of rows read */
+	public int readDoubles(int col, int chunk, double[] dst, int off) throws IOException {
+		return reader(col, chunk).readDoubles(dst, off);
+	}
+	
+	/** Read the whole column */
+	public int[] readInts(int col) throws IOException {
+		int[] ret = new int[size(col)];
+		for(int i = 0, off = 0; i < chunks(col); i++) {
+			off += readInts(col, i, ret, off);
+		}
+		return ret;
+	}
+	
+	/** Read the whole column */
+	public long[] readLongs(int col) throws IOException {
+		long[] ret = new long[size(col)];
+		for(int i = 0, off = 0; i < chunks(col); i++) {
+			off += readLongs(col, i, ret, off);
+		}
+		return ret;
+	}
+	
+	/** Read the whole column */
+	public float[] readFloats(int col) throws IOException {
+		float[] ret = new float[size(col)];
+		for(int i = 0, off = 0; i < chunks(col); i++) {
+			off += readFloats(col, i, ret, off);
+		}
+		return ret;
+	}
+	
+	/** Read the whole column */
+	public double[] readDoubles(int col) throws IOException {
+		double[] ret = new double[size(col)];
+		for(int i = 0, off = 0; i < chunks(col); i++) {
+			off += readDoubles(col, i, ret, off);
+		}
+		return ret;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		fc.close();
+	}
+	
+	private boolean floating(int col) {
+		return types[col] == Bytes.TAG_FLOAT || types[col] == Bytes.TAG_DOUBLE;
+	}
+	
+	/** Row count of a column that fits into an array */
+	private int size(int col) {
+		long rows = first[col][first[col].length - 1];
+		if(rows > Integer.MAX_VALUE) {
+			throw new IllegalStateException("Column " + names[col] + " is too large for an array, read it by chunk");
+		}
+		return (int) rows;
+	}
+	
+	/** Reader over the mapped chunk */
+	private TypedReader reader(int col, int chunk) throws IOException {
+		return new TypedReader(fc.map(FileChannel.MapMode.READ_ONLY, offsets[col][chunk], lengths[col][chunk]));
+	}
+	
+	/** Fills dst from its position to its limit with bytes from the given file offset */
+	private void read(ByteBuffer dst, long pos) throws IOException {
+		while(dst.hasRemaining()) {
+			int n = fc.read(dst, pos);
+			if(n < 0) {
+				throw new EOFException("Truncated column file");
+			}
+			pos += n;
+		}
+	}
+}
@@ -0,0 +1,333 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+
+package celestibytes.miscutils.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes a table column by column for {@link ColumnReader}. Each column is split into chunks of chunkRows values,
+ * every chunk being one Bytes array value with type indicator, and the file ends with a footer holding the offset,
+ * row count and min/max of every chunk. Columns are filled independently, row by row or a whole column at a time,
+ * but must have the same number of rows when closed.
+ */
+public class ColumnWriter implements Closeable {
+	public static final int DEFAULT_CHUNK_ROWS = 1 << 16;
+	/** "CBCF" in the trailer */
+	static final int MAGIC = 0x46434243;
+	/** Footer offset and magic at the end of the file */
+	static final int TRAILER_SIZE = 12;
+	
+	private final TypedWriter w;
+	private final int chunkRows;
+	private final List<Column> columns = new ArrayList<Column>();
+	
+	public ColumnWriter(File file) throws IOException {
+		this(new FileOutputStream(file), DEFAULT_CHUNK_ROWS);
+	}
+	
+	public ColumnWriter(OutputStream os) {
+		this(os, DEFAULT_CHUNK_ROWS);
+	}
+	
+	public ColumnWriter(OutputStream os, int chunkRows) {
+		if(chunkRows < 1) {
+			throw new IllegalArgumentException("Chunks must have at least one row");
+		}
+		
+		w = new TypedWriter(os, 1 << 16);
+		this.chunkRows = chunkRows;
+	}
+	
+	/** Adds a column of Bytes.TAG_INT, TAG_LONG, TAG_FLOAT or TAG_DOUBLE values, returns its index */
+	public int addColumn(String name, byte type) {
+		if(Bytes.size(type) < 4 || Bytes.size(type) > 8) {
+			throw new IllegalArgumentException("Unsupported column type '" + (char) type + "'");
+		}
+		
+		columns.add(new Column(name, type, chunkRows));
+		return columns.size() - 1;
+	}
+	
+	public int columns() {
+		return columns.size();
+	}
+	
+	public void putInt(int col, int v) throws IOException {
+		Column c = column(col, Bytes.TAG_INT);
+		c.ints[c.n++] = v;
+		if(c.n == chunkRows) {
+			chunk(c);
+		}
+	}
+	
+	public void putLong(int col, long v) throws IOException {
+		Column c = column(col, Bytes.TAG_LONG);
+		c.longs[c.n++] = v;
+		if(c.n == chunkRows) {
+			chunk(c);
+		}
+	}
+	
+	public void putFloat(int col, float v) throws IOException {
+		Column c = column(col, Bytes.TAG_FLOAT);
+		c.floats[c.n++] = v;
+		if(c.n == chunkRows) {
+			chunk(c);
+		}
+	}
+	
+	public void putDouble(int col, double v) throws IOException {
+		Column c = column(col, Bytes.TAG_DOUBLE);
+		c.doubles[c.n++] = v;
+		if(c.n == chunkRows) {
+			chunk(c);
+		}
+	}
+	
+	public void putInts(int col, int[] v, int off, int len) throws IOException {
+		Column c = column(col, Bytes.TAG_INT);
+		while(len > 0) {
+			int n = Math.min(len, chunkRows - c.n);
+			System.arraycopy(v, off, c.ints, c.n, n);
+			c.n += n;
+			off += n;
+			len -= n;
+			if(c.n == chunkRows) {
+				chunk(c);
+			}
+		}
+	}
+	
+	public void putLongs(int col, long[] v, int off, int len) throws IOException {
+		Column c = column(col, Bytes.TAG_LONG);
+		while(len > 0) {
+			int n = Math.min(len, chunkRows - c.n);
+			System.arraycopy(v, off, c.longs, c.n, n);
+			c.n += n;
+			off += n;
+			len -= n;
+			if(c.n == chunkRows) {
+				chunk(c);
+			}
+		}
+	}
+	
+	public void putFloats(int col, float[] v, int off, int len) throws IOException {
+		Column c = column(col, Bytes.TAG_FLOAT);
+		while(len > 0) {
+			int n = Math.min(len, chunkRows - c.n);
+			System.arraycopy(v, off, c.floats, c.n, n);
+			c.n += n;
+			off += n;
+			len -= n;
+			if(c.n == chunkRows) {
+				chunk(c);
+			}
+		}
+	}
+	
+	public void putDoubles(int col, double[] v, int off, int len) throws IOException {
+		Column c = column(col, Bytes.TAG_DOUBLE);
+		while(len > 0) {
+			int n = Math.min(len, chunkRows - c.n);
+			System.arraycopy(v, off, c.doubles, c.n, n);
+			c.n += n;
+			off += n;
+			len -= n;
+			if(c.n == chunkRows) {
+				chunk(c);
+			}
+		}
+	}
+	
+	/** Number of values written to the column so far */
+	public long rows(int col) {
+		Column c = columns.get(col);
+		return c.rows + c.n;
+	}
+	
+	/** Writes the remaining chunks and the footer and closes the stream */
+	@Override
+	public void close() throws IOException {
+		try {
+			long rows = columns.isEmpty() ? 0 : rows(0);
+			for(Column c : columns) {
+				if(c.rows + c.n != rows) {
+					throw new IOException("Column " + c.name + " has " + (c.rows + c.n) + " rows instead of " + rows);
+				}
+				if(c.n > 0) {
+					chunk(c);
+				}
+			}
+			
+			long footer = w.position();
+			w.writeVarInt(columns.size());
+			for(Column c : columns) {
+				w.writeUtf(c.name);
+				w.writeByte(c.type);
+				w.writeVarInt(c.chunks);
+				for(int i = 0; i < c.chunks; i++) {
+					w.writeVarLong(c.offsets[i]);
+					w.writeVarInt(c.lengths[i]);
+					w.writeVarInt(c.counts[i]);
+					if(c.ints != null || c.longs != null) {
+						w.writeZigZagLong(c.min[i]);
+						w.writeZigZagLong(c.max[i]);
+					} else {
+						w.writeDouble(Double.longBitsToDouble(c.min[i]));
+						w.writeDouble(Double.longBitsToDouble(c.max[i]));
+					}
+				}
+			}
+			w.putLong(footer);
+			w.putInt(MAGIC);
+		} finally {
+			w.close();
+		}
+	}
+	
+	private Column column(int col, byte type) {
+		Column c = columns.get(col);
+		if(c.type != type) {
+			throw new IllegalArgumentException("Column " + c.name + " is of type '" + (char) c.type + "'");
+		}
+		return c;
+	}
+	
+	/** Writes out the buffered values of the column as a chunk */
+	private void chunk(Column c) throws IOException {
+		long offset = w.position();
+		long min, max;
+		if(c.ints != null) {
+			int lo = Integer.MAX_VALUE, hi = Integer.MIN_VALUE;
+			for(int i = 0; i < c.n; i++) {
+				lo = Math.min(lo, c.ints[i]);
+				hi = Math.max(hi, c.ints[i]);
+			}
+			min = lo;
+			max = hi;
+			w.writeInts(c.ints, 0, c.n);
+		} else if(c.longs != null) {
+			min = Long.MAX_VALUE;
+			max = Long.MIN_VALUE;
+			for(int i = 0; i < c.n; i++) {
+				min = Math.min(min, c.longs[i]);
+				max = Math.max(max, c.longs[i]);
+			}
+			w.writeLongs(c.longs, 0, c.n);
+		} else if(c.floats != null) {
+			double lo = Double.POSITIVE_INFINITY, hi = Double.NEGATIVE_INFINITY;
+			for(int i = 0; i < c.n; i++) {
+				// NaNs are left out, they never match a range
+				if(c.floats[i] < lo) {
+					lo = c.floats[i];
+				}
+				if(c.floats[i] > hi) {
+					hi = c.floats[i];
+				}
+			}
+			min = Double.doubleToLongBits(lo);
+			max = Double.doubleToLongBits(hi);
+			w.writeFloats(c.floats, 0, c.n);
+		} else {
+			double lo = Double.POSITIVE_INFINITY, hi = Double.NEGATIVE_INFINITY;
+			for(int i = 0; i < c.n; i++) {
+				if(c.doubles[i] < lo) {
+					lo = c.doubles[i];
+				}
+				if(c.doubles[i] > hi) {
+					hi = c.doubles[i];
+				}
+			}
+			min = Double.doubleToLongBits(lo);
+			max = Double.doubleToLongBits(hi);
+			w.writeDoubles(c.doubles, 0, c.n);
+		}
+		
+		c.add(offset, (int) (w.position() - offset), min, max);
+	}
+	
+	/** Buffered values of a column and the footer entries of its chunks, min and max being double bits for floating point columns */
+	private static final class Column {
+		final String name;
+		final byte type;
+		int[] ints;
+		long[] longs;
+		float[] floats;
+		double[] doubles;
+		int n = 0;
+		long rows = 0;
+		int chunks = 0;
+		long[] offsets = new long[16];
+		int[] lengths = new int[16];
+		int[] counts = new int[16];
+		long[] min = new long[16];
+		long[] max = new long[16];
+		
+		Column(String name, byte type, int chunkRows) {
+			this.name = name;
+			this.type = type;
+			switch(type) {
+			case Bytes.TAG_INT:
+				ints = new int[chunkRows];
+				break;
+			case Bytes.TAG_LONG:
+				longs = new long[chunkRows];
+				break;
+			case Bytes.TAG_FLOAT:
+				floats = new float[chunkRows];
+				break;
+			default:
+				doubles = new double[chunkRows];
+			}
+		}
+		
+		void add(long offset, int length, long lo, long hi) {
+			if(chunks == offsets.length) {
+				offsets = Arrays.copyOf(offsets, chunks * 2);
+				lengths = Arrays.copyOf(lengths, chunks * 2);
+				counts = Arrays.copyOf(counts, chunks * 2);
+				min = Arrays.copyOf(min, chunks * 2);
+				max = Arrays.copyOf(max, chunks * 2);
+			}
+			offsets[chunks] = offset;
+			lengths[chunks] = length;
+			counts[chunks] = n;
+			min[chunks] = lo;
+			max[chunks++] = hi;
+			rows += n;
+			n = 0;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.util;
+
+import java.lang.reflect.Constructor;
+import java.util.zip.Checksum;
+
+/**
+ * CRC32C (Castagnoli) checksum, {@link #create()} returns the intrinsic java.util.zip.CRC32C on Java 9 and newer
+ * and this slicing-by-8 implementation otherwise.
+ */
+public final class Crc32c implements Checksum {
+	private static final int POLY = 0x82F63B78; // Reversed Castagnoli polynomial
+	private static final int[][] TABLE = new int[8][256];
+	private static final Constructor<?> INTRINSIC;
+	
+	static {
+		for(int i = 0; i < 256; i++) {
+			int c = i;
+			for(int k = 0; k < 8; k++) {
+				c = (c >>> 1) ^ (POLY & -(c & 1));
+			}
+			TABLE[0][i] = c;
+		}
+		for(int i = 0; i < 256; i++) {
+			for(int t = 1; t < 8; t++) {
+				TABLE[t][i] = (TABLE[t - 1][i] >>> 8) ^ TABLE[0][TABLE[t - 1][i] & 0xFF];
+			}
+		}
+		
+		Constructor<?> c = null;
+		try {
+			c = Class.forName("java.util.zip.CRC32C").getConstructor();
+		} catch(ReflectiveOperationException e) {
+			// Java 8, use the table
+		}
+		INTRINSIC = c;
+	}
+	
+	private int crc = -1;
+	
+	/** Fastest available CRC32C implementation */
+	public static Checksum create() {
+		if(INTRINSIC != null) {
+			try {
+				return (Checksum) INTRINSIC.newInstance();
+			} catch(ReflectiveOperationException e) {
+				// Fall through
+			}
+		}
+		return new Crc32c();
+	}
+	
+	@Override
+	public void update(int b) {
+		crc = (crc >>> 8) ^ TABLE[0][(crc ^ b) & 0xFF];
+	}
+	
+	@Override
+	public void update(byte[] b, int off, int len) {
+		int c = crc;
+		int end = off + len;
+		for(; off + 8 <= end; off += 8) {
+			c ^= (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8 | (b[off + 2] & 0xFF) << 16 | (b[off + 3] & 0xFF) << 24;
+			c = TABLE[7][c & 0xFF] ^ TABLE[6][(c >>> 8) & 0xFF] ^ TABLE[5][(c >>> 16) & 0xFF] ^ TABLE[4][c >>> 24]
+					^ TABLE[3][b[off + 4] & 0xFF] ^ TABLE[2][b[off + 5] & 0xFF] ^ TABLE[1][b[off + 6] & 0xFF] ^ TABLE[0][b[off + 7] & 0xFF];
+		}
+		for(; off < end; off++) {
+			c = (c >>> 8) ^ TABLE[0][(c ^ b[off]) & 0xFF];
+		}
+		crc = c;
+	}
+	
+	@Override
+	public long getValue() {
+		return ~crc & 0xFFFFFFFFL;
+	}
+	
+	@Override
+	public void reset() {
+		crc = -1;
+	}
+}
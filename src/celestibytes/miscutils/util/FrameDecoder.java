@@ -0,0 +1,96 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Decodes the values of one frame written by {@link FramedWriter}, called concurrently for different frames */
+public interface FrameDecoder<R> {
+	/** All values boxed as by {@link TypedReader#readValue()} */
+	public static final FrameDecoder<List<Object>> VALUES = new FrameDecoder<List<Object>>() {
+		@Override
+		public List<Object> decode(TypedReader r, int count) throws IOException {
+			List<Object> ret = new ArrayList<Object>(count);
+			for(int i = 0; i < count; i++) {
+				ret.add(r.readValue());
+			}
+			return ret;
+		}
+	};
+	
+	/** Frame of int values, fixed-size or varint */
+	public static final FrameDecoder<int[]> INTS = new FrameDecoder<int[]>() {
+		@Override
+		public int[] decode(TypedReader r, int count) throws IOException {
+			int[] ret = new int[count];
+			for(int i = 0; i < count; i++) {
+				ret[i] = r.readInt();
+			}
+			return ret;
+		}
+	};
+	
+	/** Frame of long values, fixed-size or varint */
+	public static final FrameDecoder<long[]> LONGS = new FrameDecoder<long[]>() {
+		@Override
+		public long[] decode(TypedReader r, int count) throws IOException {
+			long[] ret = new long[count];
+			for(int i = 0; i < count; i++) {
+				ret[i] = r.readLong();
+			}
+			return ret;
+		}
+	};
+	
+	/** Frame of float values */
+	public static final FrameDecoder<float[]> FLOATS = new FrameDecoder<float[]>() {
+		@Override
+		public float[] decode(TypedReader r, int count) throws IOException {
+			float[] ret = new float[count];
+			for(int i = 0; i < count; i++) {
+				ret[i] = r.readFloat();
+			}
+			return ret;
+		}
+	};
+	
+	/** Frame of double values */
+	public static final FrameDecoder<double[]> DOUBLES = new FrameDecoder<double[]>() {
+		@Override
+		public double[] decode(TypedReader r, int count) throws IOException {
+			double[] ret = new double[count];
+			for(int i = 0; i < count; i++) {
+				ret[i] = r.readDouble();
+			}
+			return ret;
+		}
+	};
+	
+	/** Decodes count values from the reader, which is positioned at the start of the frame */
+	public R decode(TypedReader r, int count) throws IOException;
+}
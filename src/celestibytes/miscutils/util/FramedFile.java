@@ -0,0 +1,327 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.Checksum;
+import java.util.zip.Inflater;
+
+/**
+ * Random access to a file written with {@link FramedWriter}. Only the frame headers are read when opening,
+ * frames are decoded independently so whole files can be decoded on all cores with a ForkJoinPool or a parallel stream.
+ */
+public class FramedFile implements Closeable {
+	/** Value count and block header without a checksum */
+	static final int FRAME_HEADER_SIZE = 4 + BlockOutputStream.HEADER_SIZE;
+	
+	private final FileChannel fc;
+	private final int frames;
+	private final long[] offsets;
+	private final int[] lengths;
+	/** Index of the first value of each frame, the total count last */
+	private final long[] first;
+	private final ThreadLocal<byte[][]> scratch = new ThreadLocal<byte[][]>() {
+		@Override
+		protected byte[][] initialValue() {
+			return new byte[2][0];
+		}
+	};
+	private final ThreadLocal<Checksum> crc = new ThreadLocal<Checksum>() {
+		@Override
+		protected Checksum initialValue() {
+			return Crc32c.create();
+		}
+	};
+	private volatile boolean verify = true;
+	
+	public FramedFile(File file) throws IOException {
+		this(new RandomAccessFile(file, "r").getChannel(), true);
+	}
+	
+	/** Frames are read from the current position of the channel to its end */
+	public FramedFile(FileChannel fc) throws IOException {
+		this(fc, false);
+	}
+	
+	/** Closes the channel if it's owned and the headers can't be read */
+	private FramedFile(FileChannel fc, boolean owned) throws IOException {
+		this.fc = fc;
+		try {
+			ByteBuffer h = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+			long[] offsets = new long[16];
+			int[] lengths = new int[16];
+			long[] first = new long[17];
+			int n = 0;
+			long pos = fc.position();
+			long size = fc.size();
+			
+			while(pos < size) {
+				h.clear();
+				read(h, pos);
+				if(n == offsets.length) {
+					offsets = Arrays.copyOf(offsets, n * 2);
+					lengths = Arrays.copyOf(lengths, n * 2);
+					first = Arrays.copyOf(first, n * 2 + 1);
+				}
+				
+				byte[] b = h.array();
+				int count = BlockInputStream.length(b, 0);
+				offsets[n] = pos;
+				lengths[n] = 4 + BlockInputStream.headerSize(b[4]) + BlockInputStream.length(b, 9);
+				first[n + 1] = first[n] + count;
+				pos += lengths[n++];
+			}
+			
+			if(pos != size) {
+				throw new EOFException("Truncated frame");
+			}
+			frames = n;
+			this.offsets = offsets;
+			this.lengths = lengths;
+			this.first = first;
+		} catch(IOException | RuntimeException e) {
+			if(owned) {
+				try {
+					fc.close();
+				} catch(IOException ce) {
+					e.addSuppressed(ce);
+				}
+			}
+			throw e;
+		}
+	}
+	
+	public int frames() {
+		return frames;
+	}
+	
+	/** Verifies the checksums of checksummed frames, on by default. Off skips them without computing anything */
+	public void setVerify(boolean verify) {
+		this.verify = verify;
+	}
+	
+	public boolean getVerify() {
+		return verify;
+	}
+	
+	/** Number of values in the file */
+	public long count() {
+		return first[frames];
+	}
+	
+	/** Number of values in the frame */
+	public int count(int frame) {
+		return (int) (first[frame + 1] - first[frame]);
+	}
+	
+	/** Index of the first value of the frame */
+	public long first(int frame) {
+		return first[frame];
+	}
+	
+	/** Decodes one frame, the reader passed to the decoder is only valid during the call. Safe to call concurrently */
+	public <R> R decode(int frame, FrameDecoder<R> decoder) throws IOException {
+		if(frame < 0 || frame >= frames) {
+			throw new IndexOutOfBoundsException("Frame " + frame + " of " + frames);
+		}
+		
+		byte[][] s = scratch.get();
+		int len = lengths[frame];
+		if(s[0].length < len) {
+			s[0] = new byte[len];
+		}
+		read(ByteBuffer.wrap(s[0], 0, len), offsets[frame]);
+		
+		byte[] b = s[0];
+		int rawLen = BlockInputStream.length(b, 5);
+		if(s[1].length < rawLen) {
+			s[1] = new byte[rawLen];
+		}
+		
+		int start = 4 + BlockInputStream.headerSize(b[4]);
+		if(start > FRAME_HEADER_SIZE && verify) {
+			BlockInputStream.verify(crc.get(), b, 0, FRAME_HEADER_SIZE, b, start, len - start);
+		}
+		
+		byte codec = (byte) (b[4] & ~BlockOutputStream.CHECKSUM);
+		Inflater inflater = codec == BlockOutputStream.CODEC_DEFLATE ? new Inflater() : null;
+		try {
+			BlockInputStream.decode(codec, b, start, len - start, s[1], rawLen, inflater);
+		} finally {
+			if(inflater != null) {
+				inflater.end();
+			}
+		}
+		return decoder.decode(new TypedReader(ByteBuffer.wrap(s[1], 0, rawLen)), count(frame));
+	}
+	
+	/** Decodes every frame in the pool, results are in frame order */
+	@SuppressWarnings("unchecked")
+	public <R> List<R> decode(FrameDecoder<R> decoder, ForkJoinPool pool) throws IOException {
+		Object[] ret = new Object[frames];
+		invoke(pool, (i) -> ret[i] = decode(i, decoder));
+		return (List<R>) Arrays.asList(ret);
+	}
+	
+	/** Ordered parallel stream of the decoded frames, IOExceptions are thrown as UncheckedIOException */
+	public <R> Stream<R> stream(FrameDecoder<R> decoder) {
+		return IntStream.range(0, frames).parallel().mapToObj((i) -> {
+			try {
+				return decode(i, decoder);
+			} catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+	
+	/** Ordered parallel stream of every value as by {@link TypedReader#readValue()} */
+	public Stream<Object> values() {
+		return stream(FrameDecoder.VALUES).flatMap(List::stream);
+	}
+	
+	/** Decodes a file of int values into one array in parallel */
+	public int[] ints() throws IOException {
+		int[] ret = new int[total()];
+		invoke(ForkJoinPool.commonPool(), (i) -> decode(i, (r, n) -> {
+			for(int j = (int) first[i], end = j + n; j < end; j++) {
+				ret[j] = r.readInt();
+			}
+			return null;
+		}));
+		return ret;
+	}
+	
+	/** Decodes a file of long values into one array in parallel */
+	public long[] longs() throws IOException {
+		long[] ret = new long[total()];
+		invoke(ForkJoinPool.commonPool(), (i) -> decode(i, (r, n) -> {
+			for(int j = (int) first[i], end = j + n; j < end; j++) {
+				ret[j] = r.readLong();
+			}
+			return null;
+		}));
+		return ret;
+	}
+	
+	/** Decodes a file of float values into one array in parallel */
+	public float[] floats() throws IOException {
+		float[] ret = new float[total()];
+		invoke(ForkJoinPool.commonPool(), (i) -> decode(i, (r, n) -> {
+			for(int j = (int) first[i], end = j + n; j < end; j++) {
+				ret[j] = r.readFloat();
+			}
+			return null;
+		}));
+		return ret;
+	}
+	
+	/** Decodes a file of double values into one array in parallel */
+	public double[] doubles() throws IOException {
+		double[] ret = new double[total()];
+		invoke(ForkJoinPool.commonPool(), (i) -> decode(i, (r, n) -> {
+			for(int j = (int) first[i], end = j + n; j < end; j++) {
+				ret[j] = r.readDouble();
+			}
+			return null;
+		}));
+		return ret;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		fc.close();
+	}
+	
+	private int total() throws IOException {
+		if(count() > Integer.MAX_VALUE) {
+			throw new IOException("Too many values for an array: " + count());
+		}
+		return (int) count();
+	}
+	
+	private void invoke(ForkJoinPool pool, FrameTask task) throws IOException {
+		try {
+			pool.invoke(new Decode(0, frames, task));
+		} catch(UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	
+	/** Fills dst from its position to its limit */
+	private void read(ByteBuffer dst, long pos) throws IOException {
+		while(dst.hasRemaining()) {
+			if(fc.read(dst, pos + dst.position()) < 0) {
+				throw new EOFException("Truncated frame at " + pos);
+			}
+		}
+	}
+	
+	private interface FrameTask {
+		void run(int frame) throws IOException;
+	}
+	
+	/** Splits the frame range in halves down to single frames */
+	private static class Decode extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final int from;
+		private final int to;
+		private final FrameTask task;
+		
+		Decode(int from, int to, FrameTask task) {
+			this.from = from;
+			this.to = to;
+			this.task = task;
+		}
+		
+		@Override
+		protected void compute() {
+			if(to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Decode(from, mid, task), new Decode(mid, to, task));
+			} else if(to > from) {
+				try {
+					task.run(from);
+				} catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes Bytes values in compressed frames that never split a value, each frame being the little endian
+ * count of values with type indicator in it followed by one block as written by {@link BlockOutputStream}.
+ * Values written with the put* methods belong to the frame of the last value with type indicator.
+ * Read back with {@link FramedFile}, which can decode the frames in parallel.
+ */
+public class FramedWriter extends TypedWriter {
+	public static final int DEFAULT_FRAME_SIZE = 1 << 18;
+	
+	private final OutputStream os;
+	private final BlockOutputStream blocks;
+	private final int frameSize;
+	private final byte[] head = new byte[4];
+	private int count = 0;
+	
+	public FramedWriter(OutputStream os) {
+		this(os, BlockOutputStream.CODEC_LZ4, DEFAULT_FRAME_SIZE);
+	}
+	
+	public FramedWriter(OutputStream os, byte codec) {
+		this(os, codec, DEFAULT_FRAME_SIZE);
+	}
+	
+	/** Frames are ended once they reach frameSize bytes, a single larger value makes a larger frame */
+	public FramedWriter(OutputStream os, byte codec, int frameSize) {
+		super(ByteBuffer.allocate(frameSize));
+		this.os = os;
+		this.frameSize = frameSize;
+		blocks = new BlockOutputStream(os, codec, frameSize);
+	}
+	
+	/** Adds a CRC32C of each frame written from now on, covering the value count as well, see {@link BlockOutputStream#setChecksum(boolean)} */
+	public void setChecksum(boolean checksum) {
+		blocks.setChecksum(checksum);
+	}
+	
+	public boolean getChecksum() {
+		return blocks.getChecksum();
+	}
+	
+	/** Ends the current frame, the next value starts a new one */
+	public void endFrame() throws IOException {
+		if(buf.position() > 0) {
+			head[0] = (byte) count;
+			head[1] = (byte) (count >>> 8);
+			head[2] = (byte) (count >>> 16);
+			head[3] = (byte) (count >>> 24);
+			blocks.block(head, buf.array(), buf.arrayOffset(), buf.position());
+			offset += buf.position();
+			buf.clear();
+			count = 0;
+		}
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		endFrame();
+		os.flush();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		try {
+			endFrame();
+		} finally {
+			blocks.close();
+		}
+	}
+	
+	@Override
+	void begin(int n, byte tag) throws IOException {
+		if(count > 0 && buf.position() + n > frameSize) {
+			endFrame();
+		}
+		count++;
+		super.begin(n, tag);
+	}
+	
+	/** Grows the frame buffer instead of passing bytes on, so a value is always whole within its frame */
+	@Override
+	void drain(int n) throws IOException {
+		grow(n, BlockOutputStream.MAX_BLOCK_SIZE);
+	}
+}
@@ -0,0 +1,203 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/** Pure Java LZ4 block format compressor, greedy single-probe matching for speed over ratio */
+public final class Lz4 {
+	private static final int MIN_MATCH = 4;
+	private static final int HASH_LOG = 14;
+	/** Matches may not start in the last 12 bytes */
+	private static final int MF_LIMIT = 12;
+	/** The last 5 bytes are always literals */
+	private static final int LAST_LITERALS = 5;
+	private static final int MAX_DISTANCE = 0xFFFF;
+	private static final int SKIP_TRIGGER = 6;
+	
+	private final int[] table = new int[1 << HASH_LOG];
+	
+	/** Worst case size of compressing len bytes */
+	public static int maxCompressedLength(int len) {
+		return len + len / 255 + 16;
+	}
+	
+	/** Compresses src into dst, which must have room for {@link #maxCompressedLength(int)} bytes, returns the compressed length */
+	public int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff) {
+		int srcEnd = srcOff + srcLen;
+		int mfLimit = srcEnd - MF_LIMIT;
+		int matchLimit = srcEnd - LAST_LITERALS;
+		int anchor = srcOff;
+		int ip = srcOff;
+		int op = dstOff;
+		
+		if(srcLen > MF_LIMIT) {
+			Arrays.fill(table, -1);
+			int searches = 1 << SKIP_TRIGGER;
+			
+			while(ip < mfLimit) {
+				int h = hash(i(src, ip));
+				int ref = table[h];
+				table[h] = ip;
+				if(ref < 0 || ip - ref > MAX_DISTANCE || i(src, ref) != i(src, ip)) {
+					ip += searches++ >>> SKIP_TRIGGER; // Move faster through incompressible data
+					continue;
+				}
+				searches = 1 << SKIP_TRIGGER;
+				
+				while(ip > anchor && ref > srcOff && src[ip - 1] == src[ref - 1]) {
+					ip--;
+					ref--;
+				}
+				
+				int matchLen = MIN_MATCH;
+				while(ip + matchLen < matchLimit && src[ref + matchLen] == src[ip + matchLen]) {
+					matchLen++;
+				}
+				
+				int token = op;
+				op = literals(src, anchor, ip - anchor, dst, op);
+				dst[op++] = (byte) (ip - ref);
+				dst[op++] = (byte) ((ip - ref) >>> 8);
+				int len = matchLen - MIN_MATCH;
+				dst[token] |= (byte) Math.min(len, 15);
+				if(len >= 15) {
+					op = extend(dst, op, len - 15);
+				}
+				
+				ip += matchLen;
+				anchor = ip;
+				if(ip < mfLimit) {
+					table[hash(i(src, ip - 2))] = ip - 2;
+				}
+			}
+		}
+		
+		return literals(src, anchor, srcEnd - anchor, dst, op) - dstOff;
+	}
+	
+	/** Decompresses exactly dstLen bytes from src into dst */
+	public static void decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+		int ip = srcOff;
+		int srcEnd = srcOff + srcLen;
+		int op = dstOff;
+		int dstEnd = dstOff + dstLen;
+		
+		while(ip < srcEnd) {
+			int token = src[ip++] & 0xFF;
+			int litLen = token >>> 4;
+			if(litLen == 15) {
+				int b;
+				do {
+					if(ip >= srcEnd) {
+						throw new IOException("Corrupt LZ4 block");
+					}
+					b = src[ip++] & 0xFF;
+					litLen += b;
+					if(litLen > dstEnd - op) { // Also keeps hostile lengths from overflowing
+						throw new IOException("Corrupt LZ4 block");
+					}
+				} while(b == 255);
+			}
+			
+			if(litLen > srcEnd - ip || litLen > dstEnd - op) {
+				throw new IOException("Corrupt LZ4 block");
+			}
+			System.arraycopy(src, ip, dst, op, litLen);
+			ip += litLen;
+			op += litLen;
+			if(ip == srcEnd) {
+				break;
+			}
+			
+			if(ip + 2 > srcEnd) {
+				throw new IOException("Corrupt LZ4 block");
+			}
+			int offset = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+			ip += 2;
+			int matchLen = token & 0xF;
+			if(matchLen == 15) {
+				int b;
+				do {
+					if(ip >= srcEnd) {
+						throw new IOException("Corrupt LZ4 block");
+					}
+					b = src[ip++] & 0xFF;
+					matchLen += b;
+					if(matchLen > dstEnd - op) {
+						throw new IOException("Corrupt LZ4 block");
+					}
+				} while(b == 255);
+			}
+			matchLen += MIN_MATCH;
+			
+			int ref = op - offset;
+			if(offset == 0 || ref < dstOff || matchLen > dstEnd - op) {
+				throw new IOException("Corrupt LZ4 block");
+			}
+			if(offset >= matchLen) {
+				System.arraycopy(dst, ref, dst, op, matchLen);
+				op += matchLen;
+			} else { // Overlapping, repeats the last offset bytes
+				for(int end = op + matchLen; op < end;) {
+					dst[op++] = dst[ref++];
+				}
+			}
+		}
+		
+		if(op != dstEnd) {
+			throw new IOException("Corrupt LZ4 block");
+		}
+	}
+	
+	/** Writes a token with the literal length followed by the literals, the match nibble of the token is left zero */
+	private static int literals(byte[] src, int off, int len, byte[] dst, int op) {
+		dst[op++] = (byte) (Math.min(len, 15) << 4);
+		if(len >= 15) {
+			op = extend(dst, op, len - 15);
+		}
+		System.arraycopy(src, off, dst, op, len);
+		return op + len;
+	}
+	
+	private static int extend(byte[] dst, int op, int len) {
+		while(len >= 255) {
+			dst[op++] = (byte) 255;
+			len -= 255;
+		}
+		dst[op++] = (byte) len;
+		return op;
+	}
+	
+	private static int hash(int v) {
+		return (v * -1640531535) >>> (32 - HASH_LOG);
+	}
+	
+	private static int i(byte[] b, int off) {
+		return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8 | (b[off + 2] & 0xFF) << 16 | (b[off + 3] & 0xFF) << 24;
+	}
+}
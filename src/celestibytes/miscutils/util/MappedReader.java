@@ -0,0 +1,124 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a file written with the Bytes.wt* methods straight from memory mapped windows of it,
+ * files larger than 2GB are covered by moving the window. Values are never copied to the heap,
+ * only decoded strings are.
+ */
+public class MappedReader extends TypedReader {
+	public static final int DEFAULT_WINDOW_SIZE = 1 << 30;
+	
+	private final FileChannel fc;
+	private final long size;
+	private final int windowSize;
+	
+	public MappedReader(File file) throws IOException {
+		this(new RandomAccessFile(file, "r").getChannel(), DEFAULT_WINDOW_SIZE, true);
+	}
+	
+	public MappedReader(FileChannel fc) throws IOException {
+		this(fc, DEFAULT_WINDOW_SIZE);
+	}
+	
+	public MappedReader(FileChannel fc, int windowSize) throws IOException {
+		this(fc, windowSize, false);
+	}
+	
+	/** Closes the channel if it's owned and the first window can't be mapped */
+	private MappedReader(FileChannel fc, int windowSize, boolean owned) throws IOException {
+		super(ByteBuffer.allocate(0));
+		this.fc = fc;
+		this.windowSize = windowSize;
+		try {
+			if(windowSize < 16) {
+				throw new IllegalArgumentException("Window size must be at least 16");
+			}
+			
+			size = fc.size();
+			map(0, 0);
+		} catch(IOException | RuntimeException e) {
+			if(owned) {
+				try {
+					fc.close();
+				} catch(IOException ce) {
+					e.addSuppressed(ce);
+				}
+			}
+			throw e;
+		}
+	}
+	
+	/** Size of the file */
+	public long size() {
+		return size;
+	}
+	
+	/** Moves to the given file offset, which should point at a type indicator */
+	@Override
+	public void seek(long position) throws IOException {
+		if(position < 0 || position > size) {
+			throw new IllegalArgumentException("Position " + position + " is outside the file");
+		}
+		
+		if(position >= offset && position <= offset + buf.limit()) {
+			buf.position((int) (position - offset));
+		} else {
+			map(position, 0);
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		fc.close();
+	}
+	
+	@Override
+	boolean fill(int n) throws IOException {
+		long start = offset + buf.position();
+		if(start + buf.remaining() >= size) {
+			return false;
+		}
+		
+		map(start, n);
+		return true;
+	}
+	
+	/** Maps a window of at least n bytes starting at the given file offset, the file permitting */
+	private void map(long start, int n) throws IOException {
+		int len = (int) Math.min(Math.max(windowSize, n), size - start);
+		buf = fc.map(FileChannel.MapMode.READ_ONLY, start, len).order(ByteOrder.LITTLE_ENDIAN);
+		offset = start;
+	}
+}
@@ -0,0 +1,355 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Encodes and decodes objects of a fixed shape as one value with type indicator per field, the fields being
+ * given by name in the order they are written. The field accesses and reads or writes of a record are combined
+ * into a single method handle when the codec is created, which the JVM compiles into code specialized for the
+ * shape. The output is plain Bytes data and can be read with Bytes.read or TypedReader as well.
+ * <p>
+ * Supported field types are the primitives, String (written as UTF-8) and int/long/float/double arrays.
+ * String and array fields must not be null when written, there is no null in the format.
+ */
+public class RecordCodec<T> {
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final MethodType READ = MethodType.methodType(void.class, Object.class, TypedReader.class);
+	private static final MethodType WRITE = MethodType.methodType(void.class, Object.class, TypedWriter.class);
+	
+	private final Class<T> type;
+	private final MethodHandle ctor;
+	/** (Object, TypedWriter)void */
+	private final MethodHandle write;
+	/** (Object, TypedReader)void */
+	private final MethodHandle read, readUnchecked;
+	/** Size of a record when all the fields have a fixed size, -1 otherwise */
+	private final int fixedSize;
+	
+	/** The type needs a no-argument constructor for {@link #read(TypedReader)} */
+	public RecordCodec(Class<T> type, String... fieldNames) {
+		this.type = type;
+		int size = 0;
+		try {
+			MethodHandle w = LOOKUP.findStatic(RecordCodec.class, "none", WRITE);
+			MethodHandle r = LOOKUP.findStatic(RecordCodec.class, "none", READ);
+			MethodHandle ru = r;
+			MethodHandle check = w;
+			MethodHandle nonNull = LOOKUP.findStatic(RecordCodec.class, "nonNull", MethodType.methodType(void.class, Object.class, String.class));
+			
+			for(int i = fieldNames.length - 1; i >= 0; i--) {
+				Field f = field(type, fieldNames[i]);
+				Class<?> t = f.getType();
+				int tsize = Bytes.size(tag(t));
+				size = size < 0 || tsize < 0 ? -1 : size + tsize + 1;
+				
+				MethodHandle get = LOOKUP.unreflectGetter(f).asType(MethodType.methodType(t, Object.class));
+				if(!t.isPrimitive()) {
+					// nonNull(get(o), message), all checked before anything is written
+					MethodHandle nn = MethodHandles.insertArguments(nonNull, 1, "Field " + f.getName() + " of " + type.getName() + " is null");
+					nn = MethodHandles.filterArguments(nn, 0, get.asType(MethodType.methodType(Object.class, Object.class)));
+					check = MethodHandles.foldArguments(check, MethodHandles.dropArguments(nn, 1, TypedWriter.class));
+				}
+				MethodHandle set = LOOKUP.unreflectSetter(f).asType(MethodType.methodType(void.class, Object.class, t));
+				
+				// writer.writeX(get(o))
+				MethodHandle fw = MethodHandles.filterArguments(writer(t), 1, get);
+				w = MethodHandles.foldArguments(w, MethodHandles.permuteArguments(fw, WRITE, 1, 0));
+				// set(o, reader.readX())
+				r = MethodHandles.foldArguments(r, MethodHandles.filterArguments(set, 1, reader(t, false)));
+				ru = MethodHandles.foldArguments(ru, MethodHandles.filterArguments(set, 1, reader(t, true)));
+			}
+			write = MethodHandles.foldArguments(w, check);
+			read = r;
+			readUnchecked = ru;
+			
+			MethodHandle c = null;
+			try {
+				Constructor<T> con = type.getDeclaredConstructor();
+				con.setAccessible(true);
+				c = LOOKUP.unreflectConstructor(con).asType(MethodType.methodType(Object.class));
+			} catch(NoSuchMethodException e) {
+				// read(TypedReader, T) only
+			}
+			ctor = c;
+		} catch(IllegalAccessException e) {
+			throw new IllegalArgumentException("Can't access " + type.getName(), e);
+		} catch(NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+		fixedSize = size;
+	}
+	
+	/** Writes the fields of v in order, throws IllegalArgumentException without writing anything if a String or array field is null */
+	public void write(T v, TypedWriter w) throws IOException {
+		try {
+			write.invokeExact((Object) v, w);
+		} catch(Throwable t) {
+			throw propagate(t);
+		}
+	}
+	
+	/** Reads a record into a new object, checking the type of every field */
+	public T read(TypedReader r) throws IOException {
+		return read(r, create());
+	}
+	
+	/** Reads a record into the given object, checking the type of every field */
+	public T read(TypedReader r, T into) throws IOException {
+		try {
+			read.invokeExact((Object) into, r);
+		} catch(Throwable t) {
+			throw propagate(t);
+		}
+		return into;
+	}
+	
+	/**
+	 * Reads a record written by this codec into the given object without checking the type indicators.
+	 * Records made of fixed-size fields are buffered whole with a single check.
+	 */
+	public T readTrusted(TypedReader r, T into) throws IOException {
+		if(fixedSize > 0 && !r.require(fixedSize)) {
+			throw new EOFException();
+		}
+		
+		try {
+			readUnchecked.invokeExact((Object) into, r);
+		} catch(Throwable t) {
+			throw propagate(t);
+		}
+		return into;
+	}
+	
+	/** Reads a record written by this codec into a new object without checking the type indicators */
+	public T readTrusted(TypedReader r) throws IOException {
+		return readTrusted(r, create());
+	}
+	
+	@SuppressWarnings("unchecked")
+	private T create() throws IOException {
+		if(ctor == null) {
+			throw new IllegalStateException("No no-argument constructor in " + type.getName() + ", read into an existing object instead");
+		}
+		
+		try {
+			return (T) ctor.invokeExact();
+		} catch(Throwable t) {
+			throw propagate(t);
+		}
+	}
+	
+	private static Field field(Class<?> type, String name) {
+		for(Class<?> c = type; c != null; c = c.getSuperclass()) {
+			try {
+				Field ret = c.getDeclaredField(name);
+				if(Modifier.isStatic(ret.getModifiers()) || Modifier.isFinal(ret.getModifiers())) {
+					throw new IllegalArgumentException("Field " + name + " is static or final");
+				}
+				ret.setAccessible(true);
+				return ret;
+			} catch(NoSuchFieldException e) {
+				// Superclass maybe
+			}
+		}
+		throw new IllegalArgumentException("No field " + name + " in " + type.getName());
+	}
+	
+	private static byte tag(Class<?> t) {
+		if(t == byte.class) {
+			return Bytes.TAG_BYTE;
+		} else if(t == boolean.class) {
+			return Bytes.TAG_BOOLEAN;
+		} else if(t == short.class) {
+			return Bytes.TAG_SHORT;
+		} else if(t == int.class) {
+			return Bytes.TAG_INT;
+		} else if(t == long.class) {
+			return Bytes.TAG_LONG;
+		} else if(t == float.class) {
+			return Bytes.TAG_FLOAT;
+		} else if(t == double.class) {
+			return Bytes.TAG_DOUBLE;
+		} else if(t == String.class) {
+			return Bytes.TAG_UTF8;
+		} else if(t == int[].class || t == long[].class || t == float[].class || t == double[].class) {
+			return Bytes.TAG_ARRAY;
+		}
+		throw new IllegalArgumentException("Unsupported field type " + t.getName());
+	}
+	
+	/** (TypedWriter, t)void writing the value with its type indicator */
+	private static MethodHandle writer(Class<?> t) throws NoSuchMethodException, IllegalAccessException {
+		String name;
+		if(t == byte.class) {
+			name = "writeByte";
+		} else if(t == boolean.class) {
+			name = "writeBoolean";
+		} else if(t == short.class) {
+			name = "writeShort";
+		} else if(t == int.class) {
+			name = "writeInt";
+		} else if(t == long.class) {
+			name = "writeLong";
+		} else if(t == float.class) {
+			name = "writeFloat";
+		} else if(t == double.class) {
+			name = "writeDouble";
+		} else if(t == String.class) {
+			name = "writeUtf";
+		} else if(t == int[].class) {
+			name = "writeInts";
+		} else if(t == long[].class) {
+			name = "writeLongs";
+		} else if(t == float[].class) {
+			name = "writeFloats";
+		} else {
+			name = "writeDoubles";
+		}
+		return LOOKUP.findVirtual(TypedWriter.class, name, MethodType.methodType(void.class, t));
+	}
+	
+	/** (TypedReader)t reading a value, checking its type indicator unless unchecked */
+	private static MethodHandle reader(Class<?> t, boolean unchecked) throws NoSuchMethodException, IllegalAccessException {
+		String name;
+		if(t == byte.class) {
+			name = "readByte";
+		} else if(t == boolean.class) {
+			name = "readBoolean";
+		} else if(t == short.class) {
+			name = "readShort";
+		} else if(t == int.class) {
+			name = "readInt";
+		} else if(t == long.class) {
+			name = "readLong";
+		} else if(t == float.class) {
+			name = "readFloat";
+		} else if(t == double.class) {
+			name = "readDouble";
+		} else if(t == String.class) {
+			name = "readString";
+		} else if(t == int[].class) {
+			name = "readInts";
+		} else if(t == long[].class) {
+			name = "readLongs";
+		} else if(t == float[].class) {
+			name = "readFloats";
+		} else {
+			name = "readDoubles";
+		}
+		
+		if(unchecked && !t.isArray()) { // Array headers are needed anyway
+			return LOOKUP.findStatic(RecordCodec.class, name, MethodType.methodType(t, TypedReader.class));
+		}
+		return LOOKUP.findVirtual(TypedReader.class, name, MethodType.methodType(t));
+	}
+	
+	private static RuntimeException propagate(Throwable t) throws IOException {
+		if(t instanceof IOException) {
+			throw (IOException) t;
+		}
+		if(t instanceof RuntimeException) {
+			return (RuntimeException) t;
+		}
+		if(t instanceof Error) {
+			throw (Error) t;
+		}
+		return new RuntimeException(t);
+	}
+	
+	@SuppressWarnings("unused")
+	private static void nonNull(Object v, String message) {
+		if(v == null) {
+			throw new IllegalArgumentException(message);
+		}
+	}
+	
+	@SuppressWarnings("unused")
+	private static void none(Object o, TypedReader r) {
+	}
+	
+	@SuppressWarnings("unused")
+	private static void none(Object o, TypedWriter w) {
+	}
+	
+	// Reads skipping the type indicator unchecked
+	
+	@SuppressWarnings("unused")
+	private static byte readByte(TypedReader r) throws IOException {
+		r.getByte();
+		return r.getByte();
+	}
+	
+	@SuppressWarnings("unused")
+	private static boolean readBoolean(TypedReader r) throws IOException {
+		r.getByte();
+		return r.getBoolean();
+	}
+	
+	@SuppressWarnings("unused")
+	private static short readShort(TypedReader r) throws IOException {
+		r.getByte();
+		return r.getShort();
+	}
+	
+	@SuppressWarnings("unused")
+	private static int readInt(TypedReader r) throws IOException {
+		r.getByte();
+		return r.getInt();
+	}
+	
+	@SuppressWarnings("unused")
+	private static long readLong(TypedReader r) throws IOException {
+		r.getByte();
+		return r.getLong();
+	}
+	
+	@SuppressWarnings("unused")
+	private static float readFloat(TypedReader r) throws IOException {
+		r.getByte();
+		return r.getFloat();
+	}
+	
+	@SuppressWarnings("unused")
+	private static double readDouble(TypedReader r) throws IOException {
+		r.getByte();
+		return r.getDouble();
+	}
+	
+	@SuppressWarnings("unused")
+	private static String readString(TypedReader r) throws IOException {
+		r.getByte();
+		return r.getUtf();
+	}
+}
@@ -0,0 +1,80 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.util;
+
+/**
+ * Interns strings read as {@link StringView}s, so repeated keys are decoded once. Keys are compared as bytes, the
+ * table is direct-mapped and a colliding string replaces the previous one. Safe to share between threads, at worst a
+ * string is decoded twice.
+ */
+public class StringCache {
+	public static final int DEFAULT_SIZE = 1024;
+	
+	private final Entry[] table;
+	private final int mask;
+	
+	public StringCache() {
+		this(DEFAULT_SIZE);
+	}
+	
+	/** Size is rounded up to a power of two */
+	public StringCache(int size) {
+		if(size < 1 || size > 1 << 30) {
+			throw new IllegalArgumentException("Size must be between 1 and " + (1 << 30));
+		}
+		int n = 1;
+		while(n < size) {
+			n <<= 1;
+		}
+		table = new Entry[n];
+		mask = n - 1;
+	}
+	
+	/** Returns the cached String equal to the view, decoding and caching it if there is none */
+	public String intern(StringView v) {
+		int h = v.byteHash();
+		int slot = (h ^ (h >>> 16)) & mask;
+		Entry e = table[slot];
+		if(e == null || e.utf8 != v.isUtf8() || !v.byteEquals(e.key)) {
+			e = new Entry(v.bytes(), v.isUtf8(), v.toString());
+			table[slot] = e;
+		}
+		return e.value;
+	}
+	
+	/** Immutable so that entries can be replaced racily */
+	private static class Entry {
+		final byte[] key;
+		final boolean utf8;
+		final String value;
+		
+		Entry(byte[] key, boolean utf8, String value) {
+			this.key = key;
+			this.utf8 = utf8;
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,272 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * String read with {@link TypedReader#readView()} left in the buffer of the reader, valid until the next read.
+ * Null-terminated strings are viewed as Latin-1 and length-prefixed ones as UTF-8, hashCode matches that of the
+ * equal String. Use {@link #toString()} or {@link #copy()} to keep it.
+ */
+public final class StringView implements CharSequence, Comparable<StringView> {
+	private ByteBuffer buf;
+	private byte[] array;
+	private int off;
+	private int len;
+	private boolean utf8;
+	/** Whether all bytes are ASCII, 0 if not known yet */
+	private int ascii;
+	private int hash;
+	private String string;
+	
+	public StringView() {
+		set(ByteBuffer.allocate(0), 0, 0, false);
+	}
+	
+	void set(ByteBuffer buf, int off, int len, boolean utf8) {
+		this.buf = buf;
+		this.off = off;
+		this.len = len;
+		this.utf8 = utf8;
+		if(buf.hasArray()) {
+			array = buf.array();
+			this.off += buf.arrayOffset();
+		} else {
+			array = null;
+		}
+		ascii = 0;
+		hash = 0;
+		string = null;
+	}
+	
+	/** Detached copy that stays valid */
+	public StringView copy() {
+		StringView ret = new StringView();
+		ret.set(ByteBuffer.wrap(bytes()).order(ByteOrder.LITTLE_ENDIAN), 0, len, utf8);
+		return ret;
+	}
+	
+	/** Copy of the encoded bytes */
+	public byte[] bytes() {
+		byte[] ret = new byte[len];
+		if(array != null) {
+			System.arraycopy(array, off, ret, 0, len);
+		} else {
+			for(int i = 0; i < len; i++) {
+				ret[i] = buf.get(off + i);
+			}
+		}
+		return ret;
+	}
+	
+	public boolean isUtf8() {
+		return utf8;
+	}
+	
+	public int byteLength() {
+		return len;
+	}
+	
+	public byte byteAt(int index) {
+		return array != null ? array[off + index] : buf.get(off + index);
+	}
+	
+	@Override
+	public int length() {
+		return simple() ? len : toString().length();
+	}
+	
+	@Override
+	public char charAt(int index) {
+		if(simple()) {
+			if(index < 0 || index >= len) {
+				throw new IndexOutOfBoundsException("Index " + index + " of " + len);
+			}
+			return (char) (byteAt(index) & 0xFF);
+		}
+		return toString().charAt(index);
+	}
+	
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return toString().subSequence(start, end);
+	}
+	
+	/** Whether the characters equal those of the sequence, without decoding when possible */
+	public boolean contentEquals(CharSequence cs) {
+		if(!simple()) {
+			return toString().contentEquals(cs);
+		}
+		if(cs.length() != len) {
+			return false;
+		}
+		if(array != null) {
+			for(int i = 0; i < len; i++) {
+				if((array[off + i] & 0xFF) != cs.charAt(i)) {
+					return false;
+				}
+			}
+		} else {
+			for(int i = 0; i < len; i++) {
+				if((buf.get(off + i) & 0xFF) != cs.charAt(i)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		if(this == o) {
+			return true;
+		}
+		if(!(o instanceof StringView)) {
+			return false;
+		}
+		
+		StringView v = (StringView) o;
+		if(v.utf8 != utf8) {
+			return contentEquals(v);
+		}
+		if(v.len != len) {
+			return false;
+		}
+		for(int i = 0; i < len; i++) {
+			if(byteAt(i) != v.byteAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public int hashCode() {
+		int h = hash;
+		if(h == 0 && len > 0) {
+			if(!simple()) {
+				h = toString().hashCode();
+			} else if(array != null) {
+				for(int i = off, end = off + len; i < end; i++) {
+					h = 31 * h + (array[i] & 0xFF);
+				}
+			} else {
+				for(int i = 0; i < len; i++) {
+					h = 31 * h + (buf.get(off + i) & 0xFF);
+				}
+			}
+			hash = h;
+		}
+		return h;
+	}
+	
+	/** Same order as for the Strings */
+	@Override
+	public int compareTo(StringView v) {
+		if(!simple() || !v.simple()) {
+			return toString().compareTo(v.toString());
+		}
+		int n = Math.min(len, v.len);
+		for(int i = 0; i < n; i++) {
+			int d = (byteAt(i) & 0xFF) - (v.byteAt(i) & 0xFF);
+			if(d != 0) {
+				return d;
+			}
+		}
+		return len - v.len;
+	}
+	
+	@Override
+	public String toString() {
+		if(string == null) {
+			if(array != null) {
+				string = new String(array, off, len, utf8 ? Bytes.UTF8 : Bytes.LATIN1);
+			} else {
+				byte[] b = new byte[len];
+				for(int i = 0; i < len; i++) {
+					b[i] = buf.get(off + i);
+				}
+				string = new String(b, utf8 ? Bytes.UTF8 : Bytes.LATIN1);
+			}
+		}
+		return string;
+	}
+	
+	/** Hash of the encoded bytes, taken four at a time */
+	int byteHash() {
+		int h = len;
+		int i = 0;
+		if(array != null) {
+			for(int end = off + len - 3, j = off; j < end; j += 4, i += 4) {
+				h = h * 0x9E3779B1 + ((array[j] & 0xFF) | (array[j + 1] & 0xFF) << 8 | (array[j + 2] & 0xFF) << 16 | array[j + 3] << 24);
+			}
+		}
+		for(; i < len; i++) {
+			h = h * 31 + byteAt(i);
+		}
+		return h;
+	}
+	
+	/** Whether the encoded bytes equal the key */
+	boolean byteEquals(byte[] key) {
+		if(key.length != len) {
+			return false;
+		}
+		if(array != null) {
+			for(int i = 0; i < len; i++) {
+				if(array[off + i] != key[i]) {
+					return false;
+				}
+			}
+		} else {
+			for(int i = 0; i < len; i++) {
+				if(buf.get(off + i) != key[i]) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	/** Whether each byte is one character, true for Latin-1 and ASCII-only UTF-8 */
+	private boolean simple() {
+		if(!utf8) {
+			return true;
+		}
+		if(ascii == 0) {
+			ascii = 1;
+			for(int i = 0; i < len; i++) {
+				if(byteAt(i) < 0) {
+					ascii = -1;
+					break;
+				}
+			}
+		}
+		return ascii > 0;
+	}
+}
@@ -0,0 +1,728 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Buffered reader for data written with the Bytes.wt* methods, values are returned as primitives without allocating.
+ * Reads from an InputStream, a blocking channel (FileChannel, SocketChannel...) or in place from a ByteBuffer.
+ */
+public class TypedReader implements Closeable {
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+	
+	/** Always Little Endian */
+	ByteBuffer buf;
+	/** Stream offset of buf index 0 */
+	long offset = 0;
+	
+	private InputStream is;
+	private ReadableByteChannel ch;
+	private byte[] tmp;
+	private StringView view;
+	private BytesMetrics metrics;
+	/** Whether buf is from the shared pool and returned to it on close */
+	private boolean pooled = false;
+	
+	public TypedReader(InputStream is) {
+		this(is, DEFAULT_BUFFER_SIZE);
+	}
+	
+	public TypedReader(InputStream is, int bufferSize) {
+		if(bufferSize < 16) {
+			throw new IllegalArgumentException("Buffer size must be at least 16");
+		}
+		
+		this.is = is;
+		buf = BufferPool.SHARED.heap(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+		pooled = true;
+		buf.limit(0);
+	}
+	
+	public TypedReader(ReadableByteChannel ch) {
+		this(ch, DEFAULT_BUFFER_SIZE);
+	}
+	
+	/** Reads through a pooled direct buffer of at least the given size */
+	public TypedReader(ReadableByteChannel ch, int bufferSize) {
+		if(bufferSize < 16) {
+			throw new IllegalArgumentException("Buffer size must be at least 16");
+		}
+		
+		this.ch = ch;
+		buf = BufferPool.SHARED.direct(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+		pooled = true;
+		buf.limit(0);
+	}
+	
+	/** Reads the buffer in place from its position to its limit, the byte order of the buffer is set to Little Endian */
+	public TypedReader(ByteBuffer buffer) {
+		buf = buffer.order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/** Returns the type indicator of the next value without consuming it as 0-255, -1 if end of stream has been reached */
+	public int peekTag() throws IOException {
+		if(!require(1)) {
+			return -1;
+		}
+		return buf.get(buf.position()) & 0xFF;
+	}
+	
+	public boolean hasNext() throws IOException {
+		return peekTag() != -1;
+	}
+	
+	/** Read byte with type indicator */
+	public byte readByte() throws IOException {
+		tag(Bytes.TAG_BYTE, 1);
+		return buf.get();
+	}
+	
+	/** Read boolean with type indicator */
+	public boolean readBoolean() throws IOException {
+		tag(Bytes.TAG_BOOLEAN, 1);
+		return buf.get() != 0;
+	}
+	
+	/** Read fixed-size or varint short with type indicator */
+	public short readShort() throws IOException {
+		switch(peek()) {
+		case Bytes.TAG_VARSHORT:
+			count(buf.get());
+			return (short) getVarInt();
+		case Bytes.TAG_ZIGZAGSHORT:
+			count(buf.get());
+			return (short) getZigZagInt();
+		default:
+			tag(Bytes.TAG_SHORT, 2);
+			return buf.getShort();
+		}
+	}
+	
+	/** Read fixed-size or varint int with type indicator */
+	public int readInt() throws IOException {
+		switch(peek()) {
+		case Bytes.TAG_VARINT:
+			count(buf.get());
+			return getVarInt();
+		case Bytes.TAG_ZIGZAGINT:
+			count(buf.get());
+			return getZigZagInt();
+		default:
+			tag(Bytes.TAG_INT, 4);
+			return buf.getInt();
+		}
+	}
+	
+	/** Read fixed-size or varint long with type indicator */
+	public long readLong() throws IOException {
+		switch(peek()) {
+		case Bytes.TAG_VARLONG:
+			count(buf.get());
+			return getVarLong();
+		case Bytes.TAG_ZIGZAGLONG:
+			count(buf.get());
+			return getZigZagLong();
+		default:
+			tag(Bytes.TAG_LONG, 8);
+			return buf.getLong();
+		}
+	}
+	
+	/** Read float with type indicator */
+	public float readFloat() throws IOException {
+		tag(Bytes.TAG_FLOAT, 4);
+		return buf.getFloat();
+	}
+	
+	/** Read double with type indicator */
+	public double readDouble() throws IOException {
+		tag(Bytes.TAG_DOUBLE, 8);
+		return buf.getDouble();
+	}
+	
+	/** Read null-terminated or UTF-8 string with type indicator */
+	public String readString() throws IOException {
+		if(peek() == Bytes.TAG_UTF8) {
+			count(buf.get());
+			return getUtf();
+		}
+		tag(Bytes.TAG_STRING, 0);
+		return getString();
+	}
+	
+	/** Read null-terminated or UTF-8 string with type indicator as a view into the buffer, valid until the next read */
+	public StringView readView() throws IOException {
+		boolean utf8 = peek() == Bytes.TAG_UTF8;
+		int len;
+		if(utf8) {
+			count(buf.get());
+			len = length();
+			need(len);
+		} else {
+			tag(Bytes.TAG_STRING, 0);
+			len = scan();
+		}
+		
+		if(view == null) {
+			view = new StringView();
+		}
+		view.set(buf, buf.position(), len, utf8);
+		buf.position(buf.position() + (utf8 ? len : len + 1));
+		return view;
+	}
+	
+	/** Read null-terminated or UTF-8 string with type indicator through the cache, repeated strings are decoded once */
+	public String readString(StringCache cache) throws IOException {
+		return cache.intern(readView());
+	}
+	
+	/** Read int array with type indicator */
+	public int[] readInts() throws IOException {
+		int len = array(Bytes.TAG_INT, Integer.MAX_VALUE);
+		int[] ret = new int[len];
+		if(metrics != null) {
+			metrics.array((long) len << 2);
+		}
+		ints(ret, 0, len);
+		return ret;
+	}
+	
+	/** Read int array with type indicator into dst, returns the length. The array is left unread if it doesn't fit */
+	public int readInts(int[] dst, int off) throws IOException {
+		int len = array(Bytes.TAG_INT, dst.length - off);
+		ints(dst, off, len);
+		return len;
+	}
+	
+	/** Read long array with type indicator */
+	public long[] readLongs() throws IOException {
+		int len = array(Bytes.TAG_LONG, Integer.MAX_VALUE);
+		long[] ret = new long[len];
+		if(metrics != null) {
+			metrics.array((long) len << 3);
+		}
+		longs(ret, 0, len);
+		return ret;
+	}
+	
+	/** Read long array with type indicator into dst, returns the length. The array is left unread if it doesn't fit */
+	public int readLongs(long[] dst, int off) throws IOException {
+		int len = array(Bytes.TAG_LONG, dst.length - off);
+		longs(dst, off, len);
+		return len;
+	}
+	
+	/** Read float array with type indicator */
+	public float[] readFloats() throws IOException {
+		int len = array(Bytes.TAG_FLOAT, Integer.MAX_VALUE);
+		float[] ret = new float[len];
+		if(metrics != null) {
+			metrics.array((long) len << 2);
+		}
+		floats(ret, 0, len);
+		return ret;
+	}
+	
+	/** Read float array with type indicator into dst, returns the length. The array is left unread if it doesn't fit */
+	public int readFloats(float[] dst, int off) throws IOException {
+		int len = array(Bytes.TAG_FLOAT, dst.length - off);
+		floats(dst, off, len);
+		return len;
+	}
+	
+	/** Read double array with type indicator */
+	public double[] readDoubles() throws IOException {
+		int len = array(Bytes.TAG_DOUBLE, Integer.MAX_VALUE);
+		double[] ret = new double[len];
+		if(metrics != null) {
+			metrics.array((long) len << 3);
+		}
+		doubles(ret, 0, len);
+		return ret;
+	}
+	
+	/** Read double array with type indicator into dst, returns the length. The array is left unread if it doesn't fit */
+	public int readDoubles(double[] dst, int off) throws IOException {
+		int len = array(Bytes.TAG_DOUBLE, dst.length - off);
+		doubles(dst, off, len);
+		return len;
+	}
+	
+	/** Read any value with type indicator, boxed, or as a primitive array or String */
+	public Object readValue() throws IOException {
+		switch(peek()) {
+		case Bytes.TAG_BYTE:
+			return readByte();
+		case Bytes.TAG_BOOLEAN:
+			return readBoolean();
+		case Bytes.TAG_SHORT:
+		case Bytes.TAG_VARSHORT:
+		case Bytes.TAG_ZIGZAGSHORT:
+			return readShort();
+		case Bytes.TAG_INT:
+		case Bytes.TAG_VARINT:
+		case Bytes.TAG_ZIGZAGINT:
+			return readInt();
+		case Bytes.TAG_LONG:
+		case Bytes.TAG_VARLONG:
+		case Bytes.TAG_ZIGZAGLONG:
+			return readLong();
+		case Bytes.TAG_FLOAT:
+			return readFloat();
+		case Bytes.TAG_DOUBLE:
+			return readDouble();
+		case Bytes.TAG_STRING:
+		case Bytes.TAG_UTF8:
+			return readString();
+		case Bytes.TAG_ARRAY:
+			need(2);
+			switch(buf.get(buf.position() + 1)) {
+			case Bytes.TAG_INT:
+				return readInts();
+			case Bytes.TAG_LONG:
+				return readLongs();
+			case Bytes.TAG_FLOAT:
+				return readFloats();
+			case Bytes.TAG_DOUBLE:
+				return readDoubles();
+			default:
+				throw new IOException("Unknown array type");
+			}
+		default:
+			throw new IOException("Unknown type indicator: " + peek());
+		}
+	}
+	
+	/** Read byte */
+	public byte getByte() throws IOException {
+		need(1);
+		return buf.get();
+	}
+	
+	/** Read boolean */
+	public boolean getBoolean() throws IOException {
+		need(1);
+		return buf.get() != 0;
+	}
+	
+	/** Read short */
+	public short getShort() throws IOException {
+		need(2);
+		return buf.getShort();
+	}
+	
+	/** Read int */
+	public int getInt() throws IOException {
+		need(4);
+		return buf.getInt();
+	}
+	
+	/** Read long */
+	public long getLong() throws IOException {
+		need(8);
+		return buf.getLong();
+	}
+	
+	/** Read float */
+	public float getFloat() throws IOException {
+		need(4);
+		return buf.getFloat();
+	}
+	
+	/** Read double */
+	public double getDouble() throws IOException {
+		need(8);
+		return buf.getDouble();
+	}
+	
+	/** Read unsigned varint int */
+	public int getVarInt() throws IOException {
+		return (int) getVarLong();
+	}
+	
+	/** Read unsigned varint long */
+	public long getVarLong() throws IOException {
+		if(buf.remaining() >= 10) { // No need to check for the end of the buffer
+			int pos = buf.position();
+			long ret = 0;
+			byte b;
+			for(int shift = 0; shift < 64; shift += 7) {
+				b = buf.get(pos++);
+				ret |= (b & 0x7FL) << shift;
+				if(b >= 0) {
+					buf.position(pos);
+					return ret;
+				}
+			}
+		} else {
+			long ret = 0;
+			byte b;
+			for(int shift = 0; shift < 64; shift += 7) {
+				b = getByte();
+				ret |= (b & 0x7FL) << shift;
+				if(b >= 0) {
+					return ret;
+				}
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+	
+	/** Read zig-zag varint int */
+	public int getZigZagInt() throws IOException {
+		int v = getVarInt();
+		return (v >>> 1) ^ -(v & 1);
+	}
+	
+	/** Read zig-zag varint long */
+	public long getZigZagLong() throws IOException {
+		long v = getVarLong();
+		return (v >>> 1) ^ -(v & 1);
+	}
+	
+	/** Read null-terminated string */
+	public String getString() throws IOException {
+		int len = scan();
+		String ret;
+		if(buf.hasArray()) {
+			ret = new String(buf.array(), buf.arrayOffset() + buf.position(), len, Bytes.LATIN1);
+			buf.position(buf.position() + len + 1);
+		} else {
+			if(tmp == null || tmp.length < len) {
+				tmp = new byte[Math.max(len, 64)];
+			}
+			buf.get(tmp, 0, len);
+			buf.get();
+			ret = new String(tmp, 0, len, Bytes.LATIN1);
+		}
+		if(metrics != null) {
+			metrics.string(len);
+		}
+		return ret;
+	}
+	
+	/** Read length-prefixed UTF-8 string */
+	public String getUtf() throws IOException {
+		int len = length();
+		need(len);
+		String ret;
+		if(buf.hasArray()) {
+			ret = new String(buf.array(), buf.arrayOffset() + buf.position(), len, Bytes.UTF8);
+			buf.position(buf.position() + len);
+		} else {
+			if(tmp == null || tmp.length < len) {
+				tmp = new byte[Math.max(len, 64)];
+			}
+			buf.get(tmp, 0, len);
+			ret = new String(tmp, 0, len, Bytes.UTF8);
+		}
+		if(metrics != null) {
+			metrics.string(len);
+		}
+		return ret;
+	}
+	
+	/** Skips the next value without decoding it */
+	public void skip() throws IOException {
+		int tag = peekTag();
+		if(tag == -1) {
+			throw new EOFException();
+		}
+		
+		if(metrics != null) {
+			metrics.read((byte) tag);
+		}
+		int size = Bytes.size(tag);
+		if(size >= 0) {
+			need(size + 1);
+			buf.position(buf.position() + size + 1);
+		} else if(tag == Bytes.TAG_STRING) {
+			buf.get();
+			int len = scan();
+			buf.position(buf.position() + len + 1);
+		} else if(tag == Bytes.TAG_UTF8) {
+			buf.get();
+			skipBytes(length());
+		} else if(Bytes.varint(tag)) {
+			buf.get();
+			getVarLong();
+		} else if(tag == Bytes.TAG_ARRAY) {
+			need(2);
+			buf.get();
+			int esize = Bytes.size(buf.get());
+			if(esize < 1) {
+				throw new IOException("Unknown array type");
+			}
+			skipBytes((long) length() * esize);
+		} else {
+			throw new IOException("Unknown type indicator: " + tag);
+		}
+	}
+	
+	/** Number of bytes consumed from the stream, the buffer position when reading in place */
+	public long position() {
+		return offset + buf.position();
+	}
+	
+	/** Moves to the given position, which must be within the currently buffered data */
+	public void seek(long position) throws IOException {
+		if(position < offset || position > offset + buf.limit()) {
+			throw new IllegalArgumentException("Position " + position + " is not buffered");
+		}
+		buf.position((int) (position - offset));
+	}
+	
+	/** Counts values, fills and allocations into the metrics, null to stop */
+	public void setMetrics(BytesMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	public BytesMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/** Closes the stream or channel and returns the buffer to the pool, views into it become invalid */
+	@Override
+	public void close() throws IOException {
+		try {
+			if(is != null) {
+				is.close();
+			} else if(ch != null) {
+				ch.close();
+			}
+		} finally {
+			release();
+		}
+	}
+	
+	/** Returns the buffer to the pool without closing the stream or channel, views into it become invalid */
+	void release() {
+		if(pooled) {
+			pooled = false;
+			BufferPool.SHARED.release(buf);
+			buf = ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+	
+	/** Consumes the type indicator, making sure that the whole value is buffered */
+	private void tag(byte expected, int size) throws IOException {
+		need(size + 1);
+		byte tag = buf.get(buf.position());
+		if(tag != expected) {
+			throw new IOException("Expected type '" + (char) expected + "' but found '" + (char) tag + "'");
+		}
+		buf.position(buf.position() + 1);
+		count(tag);
+	}
+	
+	private void count(byte tag) {
+		if(metrics != null) {
+			metrics.read(tag);
+		}
+	}
+	
+	/** Returns the length of the null-terminated string at the current position, which is buffered afterwards */
+	private int scan() throws IOException {
+		int len = 0;
+		while(true) {
+			int pos = buf.position();
+			int lim = buf.limit();
+			if(buf.hasArray()) {
+				byte[] a = buf.array();
+				int base = buf.arrayOffset() + pos;
+				for(int end = lim - pos; len < end; len++) {
+					if(a[base + len] == 0) {
+						return len;
+					}
+				}
+			} else {
+				for(; pos + len < lim; len++) {
+					if(buf.get(pos + len) == 0) {
+						return len;
+					}
+				}
+			}
+			
+			if(!fill(len + 1)) {
+				throw new EOFException();
+			}
+		}
+	}
+	
+	/** Consumes the header of an array, leaving it unread if it isn't of the given type or longer than room */
+	private int array(byte elem, int room) throws IOException {
+		require(12); // Header is buffered whole unless the stream ends first
+		need(2);
+		int pos = buf.position();
+		if(buf.get(pos) != Bytes.TAG_ARRAY || buf.get(pos + 1) != elem) {
+			throw new IOException("Expected type '[" + (char) elem + "' but found '" + (char) buf.get(pos) + (char) buf.get(pos + 1) + "'");
+		}
+		
+		buf.position(pos + 2);
+		int len = length();
+		if(len > room) {
+			buf.position(pos);
+			throw new IOException("Array of " + len + " doesn't fit into " + room);
+		}
+		count(Bytes.TAG_ARRAY);
+		return len;
+	}
+	
+	private void ints(int[] dst, int off, int len) throws IOException {
+		while(len > 0) {
+			need(4);
+			int n = Math.min(len, buf.remaining() >> 2);
+			buf.asIntBuffer().get(dst, off, n);
+			buf.position(buf.position() + (n << 2));
+			off += n;
+			len -= n;
+		}
+	}
+	
+	private void longs(long[] dst, int off, int len) throws IOException {
+		while(len > 0) {
+			need(8);
+			int n = Math.min(len, buf.remaining() >> 3);
+			buf.asLongBuffer().get(dst, off, n);
+			buf.position(buf.position() + (n << 3));
+			off += n;
+			len -= n;
+		}
+	}
+	
+	private void floats(float[] dst, int off, int len) throws IOException {
+		while(len > 0) {
+			need(4);
+			int n = Math.min(len, buf.remaining() >> 2);
+			buf.asFloatBuffer().get(dst, off, n);
+			buf.position(buf.position() + (n << 2));
+			off += n;
+			len -= n;
+		}
+	}
+	
+	private void doubles(double[] dst, int off, int len) throws IOException {
+		while(len > 0) {
+			need(8);
+			int n = Math.min(len, buf.remaining() >> 3);
+			buf.asDoubleBuffer().get(dst, off, n);
+			buf.position(buf.position() + (n << 3));
+			off += n;
+			len -= n;
+		}
+	}
+	
+	/** Reads a varint length */
+	private int length() throws IOException {
+		long ret = getVarLong();
+		if(ret < 0 || ret > Integer.MAX_VALUE) {
+			throw new IOException("Malformed length");
+		}
+		return (int) ret;
+	}
+	
+	/** Type indicator of the next value, which must exist */
+	private byte peek() throws IOException {
+		need(1);
+		return buf.get(buf.position());
+	}
+	
+	/** Skips n bytes without buffering them all */
+	private void skipBytes(long n) throws IOException {
+		while(buf.remaining() < n) {
+			n -= buf.remaining();
+			buf.position(buf.limit());
+			if(!fill(1)) {
+				throw new EOFException();
+			}
+		}
+		buf.position(buf.position() + (int) n);
+	}
+	
+	private void need(int n) throws IOException {
+		if(buf.remaining() < n && !require(n)) {
+			throw new EOFException();
+		}
+	}
+	
+	/** Makes sure that at least n bytes are buffered, returns false if end of stream was reached first */
+	boolean require(int n) throws IOException {
+		while(buf.remaining() < n) {
+			if(!fill(n)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/** Makes room for at least n unread bytes and reads more data, returns false if no more data is available */
+	boolean fill(int n) throws IOException {
+		if(is == null && ch == null) {
+			return false;
+		}
+		
+		long start = metrics != null ? System.nanoTime() : 0;
+		offset += buf.position();
+		if(buf.capacity() < n) {
+			int size = Math.max(n, buf.capacity() * 2);
+			ByteBuffer nbuf = buf.isDirect() ? BufferPool.SHARED.direct(size) : BufferPool.SHARED.heap(size);
+			nbuf.order(ByteOrder.LITTLE_ENDIAN);
+			nbuf.put(buf);
+			if(pooled) {
+				BufferPool.SHARED.release(buf);
+			}
+			buf = nbuf;
+			pooled = true;
+			if(metrics != null) {
+				metrics.grew();
+			}
+		} else {
+			buf.compact();
+		}
+		
+		int read;
+		if(is != null) {
+			read = is.read(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+			if(read > 0) {
+				buf.position(buf.position() + read);
+			}
+		} else {
+			read = ch.read(buf);
+		}
+		buf.flip();
+		if(metrics != null) {
+			metrics.filled(read, System.nanoTime() - start);
+		}
+		return read > 0;
+	}
+}
@@ -0,0 +1,499 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.util;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Buffered writer producing the same output as the Bytes.wt* and Bytes.w* methods, writes are passed on in large chunks.
+ * Writes to an OutputStream, a blocking channel (FileChannel, SocketChannel...) or in place into a ByteBuffer.
+ */
+public class TypedWriter implements Closeable, Flushable {
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+	
+	/** Always Little Endian */
+	ByteBuffer buf;
+	/** Stream offset of buf index 0 */
+	long offset = 0;
+	
+	private OutputStream os;
+	private WritableByteChannel ch;
+	private BytesIndex index;
+	private BytesMetrics metrics;
+	private byte[] tmp;
+	/** Whether buf is from the shared pool and returned to it on close */
+	private boolean pooled = false;
+	
+	public TypedWriter(OutputStream os) {
+		this(os, DEFAULT_BUFFER_SIZE);
+	}
+	
+	public TypedWriter(OutputStream os, int bufferSize) {
+		if(bufferSize < 16) {
+			throw new IllegalArgumentException("Buffer size must be at least 16");
+		}
+		
+		this.os = os;
+		buf = BufferPool.SHARED.heap(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+		pooled = true;
+	}
+	
+	public TypedWriter(WritableByteChannel ch) {
+		this(ch, DEFAULT_BUFFER_SIZE);
+	}
+	
+	/** Writes through a pooled direct buffer of at least the given size */
+	public TypedWriter(WritableByteChannel ch, int bufferSize) {
+		if(bufferSize < 16) {
+			throw new IllegalArgumentException("Buffer size must be at least 16");
+		}
+		
+		this.ch = ch;
+		buf = BufferPool.SHARED.direct(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+		pooled = true;
+	}
+	
+	/**
+	 * Writes into the buffer in place from its position, the byte order of the buffer is set to Little Endian.
+	 * A BufferOverflowException is thrown when a value does not fit.
+	 */
+	public TypedWriter(ByteBuffer buffer) {
+		buf = buffer.order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/** Write byte with type indicator */
+	public void writeByte(byte v) throws IOException {
+		begin(2, Bytes.TAG_BYTE);
+		buf.put(v);
+	}
+	
+	/** Write boolean with type indicator */
+	public void writeBoolean(boolean v) throws IOException {
+		begin(2, Bytes.TAG_BOOLEAN);
+		buf.put(v ? (byte) 0x61 : 0);
+	}
+	
+	/** Write short with type indicator */
+	public void writeShort(short v) throws IOException {
+		begin(3, Bytes.TAG_SHORT);
+		buf.putShort(v);
+	}
+	
+	/** Write int with type indicator */
+	public void writeInt(int v) throws IOException {
+		begin(5, Bytes.TAG_INT);
+		buf.putInt(v);
+	}
+	
+	/** Write long with type indicator */
+	public void writeLong(long v) throws IOException {
+		begin(9, Bytes.TAG_LONG);
+		buf.putLong(v);
+	}
+	
+	/** Write float with type indicator */
+	public void writeFloat(float v) throws IOException {
+		begin(5, Bytes.TAG_FLOAT);
+		buf.putFloat(v);
+	}
+	
+	/** Write double with type indicator */
+	public void writeDouble(double v) throws IOException {
+		begin(9, Bytes.TAG_DOUBLE);
+		buf.putDouble(v);
+	}
+	
+	/** Write string with type indicator, null-terminated, any nulls in the string will be ignored! */
+	public void writeString(String v) throws IOException {
+		begin(1, Bytes.TAG_STRING);
+		putString(v);
+	}
+	
+	/** Write string with type indicator as length-prefixed UTF-8 */
+	public void writeUtf(String v) throws IOException {
+		begin(1, Bytes.TAG_UTF8);
+		putUtf(v);
+	}
+	
+	/** Write short with type indicator as unsigned varint */
+	public void writeVarShort(short v) throws IOException {
+		begin(4, Bytes.TAG_VARSHORT);
+		putVarLong(v & 0xFFFF);
+	}
+	
+	/** Write int with type indicator as unsigned varint */
+	public void writeVarInt(int v) throws IOException {
+		begin(6, Bytes.TAG_VARINT);
+		putVarInt(v);
+	}
+	
+	/** Write long with type indicator as unsigned varint */
+	public void writeVarLong(long v) throws IOException {
+		begin(11, Bytes.TAG_VARLONG);
+		putVarLong(v);
+	}
+	
+	/** Write short with type indicator as zig-zag varint */
+	public void writeZigZagShort(short v) throws IOException {
+		begin(4, Bytes.TAG_ZIGZAGSHORT);
+		putVarLong(((v << 1) ^ (v >> 15)) & 0xFFFF);
+	}
+	
+	/** Write int with type indicator as zig-zag varint */
+	public void writeZigZagInt(int v) throws IOException {
+		begin(6, Bytes.TAG_ZIGZAGINT);
+		putZigZagInt(v);
+	}
+	
+	/** Write long with type indicator as zig-zag varint */
+	public void writeZigZagLong(long v) throws IOException {
+		begin(11, Bytes.TAG_ZIGZAGLONG);
+		putZigZagLong(v);
+	}
+	
+	/** Write int array with type indicator */
+	public void writeInts(int[] v, int off, int len) throws IOException {
+		array(Bytes.TAG_INT, len);
+		while(len > 0) {
+			ensure(4);
+			int n = Math.min(len, buf.remaining() >> 2);
+			buf.asIntBuffer().put(v, off, n);
+			buf.position(buf.position() + (n << 2));
+			off += n;
+			len -= n;
+		}
+	}
+	
+	/** Write long array with type indicator */
+	public void writeLongs(long[] v, int off, int len) throws IOException {
+		array(Bytes.TAG_LONG, len);
+		while(len > 0) {
+			ensure(8);
+			int n = Math.min(len, buf.remaining() >> 3);
+			buf.asLongBuffer().put(v, off, n);
+			buf.position(buf.position() + (n << 3));
+			off += n;
+			len -= n;
+		}
+	}
+	
+	/** Write float array with type indicator */
+	public void writeFloats(float[] v, int off, int len) throws IOException {
+		array(Bytes.TAG_FLOAT, len);
+		while(len > 0) {
+			ensure(4);
+			int n = Math.min(len, buf.remaining() >> 2);
+			buf.asFloatBuffer().put(v, off, n);
+			buf.position(buf.position() + (n << 2));
+			off += n;
+			len -= n;
+		}
+	}
+	
+	/** Write double array with type indicator */
+	public void writeDoubles(double[] v, int off, int len) throws IOException {
+		array(Bytes.TAG_DOUBLE, len);
+		while(len > 0) {
+			ensure(8);
+			int n = Math.min(len, buf.remaining() >> 3);
+			buf.asDoubleBuffer().put(v, off, n);
+			buf.position(buf.position() + (n << 3));
+			off += n;
+			len -= n;
+		}
+	}
+	
+	public void writeInts(int[] v) throws IOException {
+		writeInts(v, 0, v.length);
+	}
+	
+	public void writeLongs(long[] v) throws IOException {
+		writeLongs(v, 0, v.length);
+	}
+	
+	public void writeFloats(float[] v) throws IOException {
+		writeFloats(v, 0, v.length);
+	}
+	
+	public void writeDoubles(double[] v) throws IOException {
+		writeDoubles(v, 0, v.length);
+	}
+	
+	/** Write byte */
+	public void putByte(byte v) throws IOException {
+		ensure(1);
+		buf.put(v);
+	}
+	
+	/** Write boolean */
+	public void putBoolean(boolean v) throws IOException {
+		ensure(1);
+		buf.put(v ? (byte) 0x61 : 0);
+	}
+	
+	/** Write short */
+	public void putShort(short v) throws IOException {
+		ensure(2);
+		buf.putShort(v);
+	}
+	
+	/** Write int */
+	public void putInt(int v) throws IOException {
+		ensure(4);
+		buf.putInt(v);
+	}
+	
+	/** Write long */
+	public void putLong(long v) throws IOException {
+		ensure(8);
+		buf.putLong(v);
+	}
+	
+	/** Write float */
+	public void putFloat(float v) throws IOException {
+		ensure(4);
+		buf.putFloat(v);
+	}
+	
+	/** Write double */
+	public void putDouble(double v) throws IOException {
+		ensure(8);
+		buf.putDouble(v);
+	}
+	
+	/** Write int as unsigned varint */
+	public void putVarInt(int v) throws IOException {
+		putVarLong(v & 0xFFFFFFFFL);
+	}
+	
+	/** Write long as unsigned varint */
+	public void putVarLong(long v) throws IOException {
+		ensure(10);
+		while((v & ~0x7FL) != 0) {
+			buf.put((byte) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		buf.put((byte) v);
+	}
+	
+	/** Write int as zig-zag varint */
+	public void putZigZagInt(int v) throws IOException {
+		putVarInt((v << 1) ^ (v >> 31));
+	}
+	
+	/** Write long as zig-zag varint */
+	public void putZigZagLong(long v) throws IOException {
+		putVarLong((v << 1) ^ (v >> 63));
+	}
+	
+	/** Write string, null-terminated, any nulls in the string will be ignored! */
+	public void putString(String v) throws IOException {
+		int len = v.length();
+		int i = 0;
+		char c;
+		while(i < len) {
+			ensure(1);
+			int end = Math.min(len, i + buf.remaining());
+			for(; i < end; i++) {
+				c = v.charAt(i);
+				if(c != '\0') {
+					buf.put((byte) c); // Note; all values above 255 are truncated
+				}
+			}
+		}
+		ensure(1);
+		buf.put((byte) 0);
+	}
+	
+	/** Write string as length-prefixed UTF-8 */
+	public void putUtf(String v) throws IOException {
+		int len = Bytes.utf8Length(v);
+		putVarInt(len);
+		if(buf.hasArray() && len <= buf.capacity()) {
+			ensure(len);
+			int pos = buf.arrayOffset() + buf.position();
+			buf.position(Bytes.utf8(v, len, buf.array(), pos) - buf.arrayOffset());
+		} else {
+			if(tmp == null || tmp.length < len) {
+				tmp = new byte[Math.max(len, 64)];
+			}
+			Bytes.utf8(v, len, tmp, 0);
+			putBytes(tmp, 0, len);
+		}
+	}
+	
+	/** Write raw bytes */
+	public void putBytes(byte[] src, int off, int len) throws IOException {
+		while(len > 0) {
+			ensure(1);
+			int n = Math.min(len, buf.remaining());
+			buf.put(src, off, n);
+			off += n;
+			len -= n;
+		}
+	}
+	
+	/** Number of bytes written, including buffered ones, the buffer position when writing in place */
+	public long position() {
+		return offset + buf.position();
+	}
+	
+	/** Records the offset of every value with type indicator written from now on into the index, null to stop */
+	public void setIndex(BytesIndex index) {
+		this.index = index;
+	}
+	
+	public BytesIndex getIndex() {
+		return index;
+	}
+	
+	/** Counts values, drains and buffer growth into the metrics, null to stop */
+	public void setMetrics(BytesMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	public BytesMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/** Passes the buffered bytes on and flushes the stream */
+	@Override
+	public void flush() throws IOException {
+		drain(0);
+		if(os != null) {
+			os.flush();
+		}
+	}
+	
+	/** Writes out the buffered bytes, closes the stream or channel and returns the buffer to the pool */
+	@Override
+	public void close() throws IOException {
+		try {
+			drain(0);
+		} finally {
+			try {
+				if(os != null) {
+					os.close();
+				} else if(ch != null) {
+					ch.close();
+				}
+			} finally {
+				release();
+			}
+		}
+	}
+	
+	/** Returns the buffer to the pool without flushing or closing the stream or channel */
+	void release() {
+		if(pooled) {
+			pooled = false;
+			BufferPool.SHARED.release(buf);
+			buf = ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+	
+	/** Writes the type indicators and length of an array */
+	private void array(byte elem, int len) throws IOException {
+		begin(2, Bytes.TAG_ARRAY);
+		buf.put(elem);
+		putVarInt(len);
+	}
+	
+	/** Writes the type indicator of a value, n being the size of the fixed-size part of the value including the indicator */
+	void begin(int n, byte tag) throws IOException {
+		ensure(n);
+		if(index != null) {
+			index.add(position());
+		}
+		if(metrics != null) {
+			metrics.wrote(tag);
+		}
+		buf.put(tag);
+	}
+	
+	void ensure(int n) throws IOException {
+		if(buf.remaining() < n) {
+			drain(n);
+		}
+	}
+	
+	/** Passes the buffered bytes on, leaving room for at least n bytes */
+	void drain(int n) throws IOException {
+		if(os == null && ch == null) {
+			if(buf.remaining() < n) {
+				throw new BufferOverflowException();
+			}
+			return;
+		}
+		
+		if(buf.position() > 0) {
+			int len = buf.position();
+			long start = metrics != null ? System.nanoTime() : 0;
+			offset += len;
+			if(os != null) {
+				os.write(buf.array(), buf.arrayOffset(), buf.position());
+				buf.clear();
+			} else {
+				buf.flip();
+				while(buf.hasRemaining()) {
+					ch.write(buf);
+				}
+				buf.clear();
+			}
+			if(metrics != null) {
+				metrics.drained(len, System.nanoTime() - start);
+			}
+		}
+	}
+	
+	/** Replaces the buffer with a larger heap buffer with room for at least n more bytes, up to max bytes in total */
+	void grow(int n, int max) throws IOException {
+		if(buf.remaining() < n) {
+			long size = buf.capacity();
+			while(size - buf.position() < n) {
+				size *= 2;
+			}
+			if(size > max) {
+				throw new IOException("Value too large to buffer");
+			}
+			
+			ByteBuffer grown = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+			buf.flip();
+			grown.put(buf);
+			buf = grown;
+			if(metrics != null) {
+				metrics.grew();
+			}
+		}
+	}
+}
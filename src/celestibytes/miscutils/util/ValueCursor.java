@@ -0,0 +1,292 @@
+/*
+* Copyright (c) 2015 Celestibytes
+* 
+* Maintainer: Okkapel
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package celestibytes.miscutils.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazy cursor over values written with the Bytes.wt* methods. {@link #next()} moves to the next value accepted by the
+ * filter without decoding it, the value can then be read once with the typed getters. Values that aren't read or
+ * don't pass the filter are skipped without decoding, so memory use stays constant however long the stream is.
+ */
+public class ValueCursor implements Closeable {
+	private final TypedReader reader;
+	/** Accepted type indicators, bit per ASCII code */
+	private long lo = -1L;
+	private long hi = -1L;
+	private int tag = -1;
+	private boolean unread = false;
+	private long index = -1;
+	private long count = 0;
+	
+	public ValueCursor(InputStream is) {
+		this(new TypedReader(is));
+	}
+	
+	public ValueCursor(TypedReader reader) {
+		this.reader = reader;
+	}
+	
+	/**
+	 * Only stops on values with one of the type indicators, all values if none are given. Type indicators read with the
+	 * same method are accepted together, {@link Bytes#TAG_INT} also accepts varint ints and {@link Bytes#TAG_STRING} UTF-8 strings.
+	 */
+	public ValueCursor filter(byte... tags) {
+		if(tags.length == 0) {
+			lo = hi = -1L;
+			return this;
+		}
+		
+		lo = hi = 0;
+		for(byte t : tags) {
+			accept(t);
+			switch(t) {
+			case Bytes.TAG_SHORT:
+				accept(Bytes.TAG_VARSHORT);
+				accept(Bytes.TAG_ZIGZAGSHORT);
+				break;
+			case Bytes.TAG_INT:
+				accept(Bytes.TAG_VARINT);
+				accept(Bytes.TAG_ZIGZAGINT);
+				break;
+			case Bytes.TAG_LONG:
+				accept(Bytes.TAG_VARLONG);
+				accept(Bytes.TAG_ZIGZAGLONG);
+				break;
+			case Bytes.TAG_STRING:
+				accept(Bytes.TAG_UTF8);
+				break;
+			}
+		}
+		return this;
+	}
+	
+	/** Moves to the next accepted value, skipping the current one if it wasn't read. False at the end of the stream */
+	public boolean next() throws IOException {
+		if(unread) {
+			reader.skip();
+			count++;
+		}
+		
+		while(true) {
+			int t = reader.peekTag();
+			if(t == -1) {
+				tag = -1;
+				unread = false;
+				return false;
+			}
+			if(accepts(t)) {
+				tag = t;
+				unread = true;
+				index = count;
+				return true;
+			}
+			reader.skip();
+			count++;
+		}
+	}
+	
+	/** Type indicator of the current value, -1 before the first and after the last */
+	public int tag() {
+		return tag;
+	}
+	
+	/** Position of the current value among all values since the cursor was created, including skipped ones */
+	public long index() {
+		return index;
+	}
+	
+	/** Whether the current value has not been read yet */
+	public boolean isUnread() {
+		return unread;
+	}
+	
+	public byte getByte() throws IOException {
+		check();
+		byte ret = reader.readByte();
+		read();
+		return ret;
+	}
+	
+	public boolean getBoolean() throws IOException {
+		check();
+		boolean ret = reader.readBoolean();
+		read();
+		return ret;
+	}
+	
+	public short getShort() throws IOException {
+		check();
+		short ret = reader.readShort();
+		read();
+		return ret;
+	}
+	
+	public int getInt() throws IOException {
+		check();
+		int ret = reader.readInt();
+		read();
+		return ret;
+	}
+	
+	public long getLong() throws IOException {
+		check();
+		long ret = reader.readLong();
+		read();
+		return ret;
+	}
+	
+	public float getFloat() throws IOException {
+		check();
+		float ret = reader.readFloat();
+		read();
+		return ret;
+	}
+	
+	public double getDouble() throws IOException {
+		check();
+		double ret = reader.readDouble();
+		read();
+		return ret;
+	}
+	
+	public String getString() throws IOException {
+		check();
+		String ret = reader.readString();
+		read();
+		return ret;
+	}
+	
+	/** View of the current string, valid until the next call to {@link #next()} */
+	public StringView getView() throws IOException {
+		check();
+		StringView ret = reader.readView();
+		read();
+		return ret;
+	}
+	
+	public int[] getInts() throws IOException {
+		check();
+		int[] ret = reader.readInts();
+		read();
+		return ret;
+	}
+	
+	public long[] getLongs() throws IOException {
+		check();
+		long[] ret = reader.readLongs();
+		read();
+		return ret;
+	}
+	
+	public float[] getFloats() throws IOException {
+		check();
+		float[] ret = reader.readFloats();
+		read();
+		return ret;
+	}
+	
+	public double[] getDoubles() throws IOException {
+		check();
+		double[] ret = reader.readDoubles();
+		read();
+		return ret;
+	}
+	
+	/** Current value boxed as by {@link TypedReader#readValue()} */
+	public Object getValue() throws IOException {
+		check();
+		Object ret = reader.readValue();
+		read();
+		return ret;
+	}
+	
+	/**
+	 * Sequential spliterator handing out this cursor positioned at each accepted value. The cursor must only be used
+	 * within the action, IOExceptions are thrown as UncheckedIOException.
+	 */
+	public Spliterator<ValueCursor> spliterator() {
+		return new Spliterators.AbstractSpliterator<ValueCursor>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+			@Override
+			public boolean tryAdvance(Consumer<? super ValueCursor> action) {
+				try {
+					if(!next()) {
+						return false;
+					}
+				} catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				action.accept(ValueCursor.this);
+				return true;
+			}
+		};
+	}
+	
+	/** Sequential stream over {@link #spliterator()} */
+	public Stream<ValueCursor> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+	
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+	
+	private void check() {
+		if(!unread) {
+			throw new IllegalStateException(tag == -1 ? "No current value" : "Value already read");
+		}
+	}
+	
+	/** Marks the current value read once a getter has succeeded, a failed getter leaves it to be skipped */
+	private void read() {
+		unread = false;
+		count++;
+	}
+	
+	private void accept(byte t) {
+		if(t < 64) {
+			lo |= 1L << t;
+		} else {
+			hi |= 1L << (t - 64);
+		}
+	}
+	
+	private boolean accepts(int t) {
+		if(t < 0 || t >= 128) {
+			return false;
+		}
+		return t < 64 ? (lo & 1L << t) != 0 : (hi & 1L << (t - 64)) != 0;
+	}
+}